@@ -0,0 +1,82 @@
+package com.httydcraft.authcraft;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Стоимость одного вызова CryptManager на секрете TOTP.
+// perCall* — прежняя реализация: Cipher.getInstance("AES") (ECB) на каждый вызов;
+// gcm* — текущий формат v2 на закэшированном в потоке Cipher; legacyDecrypt — чтение старой строки текущим кодом.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CryptManagerBenchmark {
+    private static final String KEY = "default_authcraft_key_16";
+    private static final String SECRET = "JBSWY3DPEHPK3PXPJBSWY3DPEHPK3PXP";
+
+    private CryptManager cryptManager;
+    private SecretKeySpec key;
+    private String gcmData;
+    private String legacyData;
+
+    @Setup
+    public void setup() throws Exception {
+        cryptManager = new CryptManager(KEY, Logger.getLogger("CryptManagerBenchmark"));
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(KEY.getBytes(StandardCharsets.UTF_8));
+        byte[] key16 = new byte[16];
+        System.arraycopy(digest, 0, key16, 0, 16);
+        key = new SecretKeySpec(key16, "AES");
+        gcmData = cryptManager.encrypt(SECRET);
+        legacyData = perCallEncrypt();
+        if (!SECRET.equals(cryptManager.decrypt(legacyData)) || !SECRET.equals(cryptManager.decrypt(gcmData))) {
+            throw new IllegalStateException("Round trip failed");
+        }
+    }
+
+    @Benchmark
+    public String perCallEncrypt() throws Exception {
+        Cipher cipher = Cipher.getInstance("AES");
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        return Base64.getEncoder().encodeToString(cipher.doFinal(SECRET.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public String perCallDecrypt() throws Exception {
+        Cipher cipher = Cipher.getInstance("AES");
+        cipher.init(Cipher.DECRYPT_MODE, key);
+        return new String(cipher.doFinal(Base64.getDecoder().decode(legacyData)), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String gcmEncrypt() {
+        return cryptManager.encrypt(SECRET);
+    }
+
+    @Benchmark
+    public String gcmDecrypt() {
+        return cryptManager.decrypt(gcmData);
+    }
+
+    @Benchmark
+    public String legacyDecrypt() {
+        return cryptManager.decrypt(legacyData);
+    }
+}
@@ -0,0 +1,124 @@
+package com.httydcraft.authcraft;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Состояния игроков: старый HashMap из AuthManager против PlayerStateStore.
+// get — проверка на каждом событии движения/взаимодействия в главном потоке; approve — смена состояния из потока бота.
+// Группа contended: главный поток читает, поток бота одновременно подтверждает входы
+// (для HashMap без блокировок это гонка, поэтому сравнивается с synchronizedMap).
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PlayerStateStoreBenchmark {
+    @Param({"300"})
+    public int players;
+
+    private UUID[] ids;
+    private Map<UUID, PlayerState> hashMap;
+    private Map<UUID, PlayerState> synchronizedMap;
+    private PlayerStateStore store;
+
+    @Setup
+    public void setup() {
+        ids = new UUID[players];
+        hashMap = new HashMap<>();
+        synchronizedMap = Collections.synchronizedMap(new HashMap<>());
+        store = new PlayerStateStore();
+        for (int i = 0; i < players; i++) {
+            ids[i] = UUID.randomUUID();
+            PlayerState state = i % 2 == 0 ? PlayerState.AUTHENTICATED : PlayerState.UNAUTHENTICATED;
+            hashMap.put(ids[i], state);
+            synchronizedMap.put(ids[i], state);
+            store.set(ids[i], state);
+        }
+    }
+
+    // Поток-локальный курсор по игрокам, чтобы не мерить одну и ту же ячейку
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next(int bound) {
+            int index = next;
+            next = index + 1 == bound ? 0 : index + 1;
+            return index;
+        }
+    }
+
+    @Benchmark
+    public PlayerState hashMapGet(Cursor cursor) {
+        return hashMap.getOrDefault(ids[cursor.next(players)], PlayerState.UNAUTHENTICATED);
+    }
+
+    @Benchmark
+    public PlayerState storeGet(Cursor cursor) {
+        return store.get(ids[cursor.next(players)]);
+    }
+
+    @Benchmark
+    public PlayerState hashMapApprove(Cursor cursor) {
+        UUID id = ids[cursor.next(players)];
+        hashMap.put(id, PlayerState.PENDING_2FA);
+        return hashMap.put(id, PlayerState.AUTHENTICATED);
+    }
+
+    @Benchmark
+    public boolean storeApprove(Cursor cursor) {
+        UUID id = ids[cursor.next(players)];
+        store.set(id, PlayerState.PENDING_2FA);
+        return store.transition(id, PlayerState.PENDING_2FA, PlayerState.AUTHENTICATED);
+    }
+
+    @Benchmark
+    @Group("contendedSynchronizedMap")
+    @GroupThreads(1)
+    public PlayerState synchronizedMapMainThread(Cursor cursor) {
+        return synchronizedMap.getOrDefault(ids[cursor.next(players)], PlayerState.UNAUTHENTICATED);
+    }
+
+    @Benchmark
+    @Group("contendedSynchronizedMap")
+    @GroupThreads(1)
+    public PlayerState synchronizedMapBotThread(Cursor cursor) {
+        UUID id = ids[cursor.next(players)];
+        synchronizedMap.put(id, PlayerState.PENDING_2FA);
+        return synchronizedMap.put(id, PlayerState.AUTHENTICATED);
+    }
+
+    @Benchmark
+    @Group("contendedStore")
+    @GroupThreads(1)
+    public PlayerState storeMainThread(Cursor cursor) {
+        return store.get(ids[cursor.next(players)]);
+    }
+
+    @Benchmark
+    @Group("contendedStore")
+    @GroupThreads(1)
+    public boolean storeBotThread(Cursor cursor) {
+        UUID id = ids[cursor.next(players)];
+        store.set(id, PlayerState.PENDING_2FA);
+        return store.transition(id, PlayerState.PENDING_2FA, PlayerState.AUTHENTICATED);
+    }
+}
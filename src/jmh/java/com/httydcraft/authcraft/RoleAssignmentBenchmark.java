@@ -0,0 +1,201 @@
+package com.httydcraft.authcraft;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.command.SimpleCommandMap;
+import org.bukkit.permissions.PermissibleBase;
+import org.bukkit.permissions.Permission;
+import org.bukkit.permissions.PermissionAttachment;
+import org.bukkit.permissions.PermissionDefault;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.SimplePluginManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Выдача роли одному игроку при входе (для волны из 300 входов умножать на 300).
+// perPermission — прежний RoleManager.applyPermissions: addAttachment(plugin) и setPermission на каждое право,
+// каждое setPermission пересчитывает все права игрока; compiledTemplate — одно право-шаблон authcraft.role.<роль>.
+// Оба варианта выдают один и тот же уже раскрытый набор прав.
+// expandTrie/expandScan — раскрытие шаблонов "foo.*" при компиляции ролей: PermissionTrie против перебора всех прав.
+// Нужен настоящий spigot-api: сервер подменяется прокси, права считает SimplePluginManager.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoleAssignmentBenchmark {
+    private static final String TEMPLATE_NODE = "authcraft.role.bench";
+
+    // Права сервера: plugin<p>.group<g>.perm<i>
+    @State(Scope.Benchmark)
+    public static class Permissions {
+        @Param({"50", "200"})
+        public int roleSize;
+
+        final List<String> serverPermissions = new ArrayList<>();
+        final List<String> wildcards = new ArrayList<>();
+        final Map<String, Boolean> rolePermissions = new LinkedHashMap<>();
+        PermissionTrie trie;
+
+        @Setup
+        public void setup() {
+            for (int p = 0; p < 20; p++) {
+                for (int g = 0; g < 10; g++) {
+                    for (int i = 0; i < 10; i++) {
+                        serverPermissions.add("plugin" + p + ".group" + g + ".perm" + i);
+                    }
+                }
+            }
+            trie = new PermissionTrie();
+            for (String permission : serverPermissions) {
+                trie.add(permission);
+            }
+            // Роль из шаблонов по группам: каждый "pluginP.groupG.*" даёт 10 прав
+            for (int n = 0; n < roleSize / 10; n++) {
+                String wildcard = "plugin" + (n / 10) + ".group" + (n % 10) + ".*";
+                wildcards.add(wildcard);
+                for (String expanded : trie.expand(wildcard)) {
+                    rolePermissions.put(expanded, true);
+                }
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class BukkitServer {
+        PluginManager pluginManager;
+        Plugin plugin;
+
+        @Setup
+        public void setup(Permissions permissions) {
+            if (Bukkit.getServer() == null) {
+                Logger logger = Logger.getLogger("RoleAssignmentBenchmark");
+                SimplePluginManager[] holder = new SimplePluginManager[1];
+                Server server = proxy(Server.class, (method, args) -> {
+                    switch (method.getName()) {
+                        case "getPluginManager":
+                            return holder[0];
+                        case "getLogger":
+                            return logger;
+                        default:
+                            return null;
+                    }
+                });
+                holder[0] = new SimplePluginManager(server, new SimpleCommandMap(server));
+                Bukkit.setServer(server);
+            }
+            pluginManager = Bukkit.getServer().getPluginManager();
+            plugin = proxy(Plugin.class, (method, args) -> {
+                switch (method.getName()) {
+                    case "isEnabled":
+                        return true;
+                    case "getName":
+                        return "AuthCraft";
+                    default:
+                        return null;
+                }
+            });
+            for (String permission : permissions.serverPermissions) {
+                if (pluginManager.getPermission(permission) == null) {
+                    pluginManager.addPermission(new Permission(permission, null, PermissionDefault.FALSE, null));
+                }
+            }
+            pluginManager.removePermission(TEMPLATE_NODE);
+            pluginManager.addPermission(new Permission(TEMPLATE_NODE, "AuthCraft role bench", PermissionDefault.FALSE,
+                    permissions.rolePermissions));
+        }
+    }
+
+    private interface Handler {
+        Object invoke(Method method, Object[] args);
+    }
+
+    // Прокси интерфейса Bukkit: Object-методы по идентичности, примитивы по умолчанию — нули
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (self, method, args) -> {
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(self);
+                case "equals":
+                    return self == args[0];
+                case "toString":
+                    return type.getSimpleName() + "Proxy";
+                default:
+                    break;
+            }
+            Object result = handler.invoke(method, args);
+            if (result == null && method.getReturnType().isPrimitive()) {
+                Class<?> returnType = method.getReturnType();
+                if (returnType == boolean.class) {
+                    return false;
+                }
+                if (returnType == void.class) {
+                    return null;
+                }
+                return returnType == long.class ? (Object) 0L : returnType == double.class ? (Object) 0.0 : (Object) 0;
+            }
+            return result;
+        }));
+    }
+
+    @Benchmark
+    public PermissibleBase perPermission(BukkitServer server, Permissions permissions) {
+        PermissibleBase player = new PermissibleBase(null);
+        PermissionAttachment attachment = player.addAttachment(server.plugin);
+        for (String permission : permissions.rolePermissions.keySet()) {
+            attachment.setPermission(permission, true);
+        }
+        return player;
+    }
+
+    @Benchmark
+    public PermissibleBase compiledTemplate(BukkitServer server) {
+        PermissibleBase player = new PermissibleBase(null);
+        player.addAttachment(server.plugin, TEMPLATE_NODE, true);
+        return player;
+    }
+
+    @Benchmark
+    public Map<String, Boolean> expandTrie(Permissions permissions) {
+        Map<String, Boolean> result = new LinkedHashMap<>();
+        for (String wildcard : permissions.wildcards) {
+            for (String expanded : permissions.trie.expand(wildcard)) {
+                result.put(expanded, true);
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Map<String, Boolean> expandScan(Permissions permissions) {
+        Map<String, Boolean> result = new LinkedHashMap<>();
+        for (String wildcard : permissions.wildcards) {
+            String prefix = wildcard.substring(0, wildcard.length() - 1);
+            for (String permission : permissions.serverPermissions) {
+                if (permission.startsWith(prefix)) {
+                    result.put(permission, true);
+                }
+            }
+        }
+        return result;
+    }
+}
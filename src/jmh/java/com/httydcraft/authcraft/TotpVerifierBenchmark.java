@@ -0,0 +1,64 @@
+package com.httydcraft.authcraft;
+
+import dev.samstevens.totp.code.CodeVerifier;
+import dev.samstevens.totp.code.DefaultCodeGenerator;
+import dev.samstevens.totp.code.DefaultCodeVerifier;
+import dev.samstevens.totp.time.SystemTimeProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Пропускная способность проверки TOTP на одно ядро (@Threads(1)), окно ±1 шаг как в config.yml.
+// Код заведомо неверный — худший случай: считаются все шаги окна.
+// defaultVerifier — прежний TOTPUtils.verifyCode: decrypt + DefaultCodeVerifier на каждую попытку;
+// totpVerifier — TotpVerifier с кэшем ключа игрока и Mac на поток.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Thread)
+public class TotpVerifierBenchmark {
+    private static final String SECRET = "JBSWY3DPEHPK3PXPJBSWY3DPEHPK3PXP";
+
+    private CryptManager cryptManager;
+    private CodeVerifier defaultVerifier;
+    private TotpVerifier totpVerifier;
+    private UUID playerId;
+    private String encryptedSecret;
+    private String wrongCode;
+
+    @Setup
+    public void setup() {
+        cryptManager = new CryptManager("default_authcraft_key_16", Logger.getLogger("TotpVerifierBenchmark"));
+        defaultVerifier = new DefaultCodeVerifier(new DefaultCodeGenerator(), new SystemTimeProvider());
+        totpVerifier = new TotpVerifier(cryptManager, 1, TimeUnit.MINUTES.toMillis(5));
+        playerId = UUID.randomUUID();
+        encryptedSecret = cryptManager.encrypt(SECRET);
+        // Шесть цифр проходят разбор; совпадение с одним из трёх кодов окна маловероятно
+        wrongCode = "000000";
+    }
+
+    @Benchmark
+    public boolean defaultVerifier() {
+        return defaultVerifier.isValidCode(cryptManager.decrypt(encryptedSecret), wrongCode);
+    }
+
+    @Benchmark
+    public boolean totpVerifier() {
+        return totpVerifier.verify(playerId, encryptedSecret, wrongCode);
+    }
+}
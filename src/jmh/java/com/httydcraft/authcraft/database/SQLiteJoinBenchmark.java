@@ -0,0 +1,110 @@
+package com.httydcraft.authcraft.database;
+
+import com.httydcraft.authcraft.AuditLogger;
+import org.bukkit.configuration.MemoryConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+// Входы в секунду при смешанной нагрузке на SQLite.
+// join — PlayerRepository.find, как проверка регистрации при входе (4 потока);
+// write — смена пароля, отдельная транзакция на каждую операцию (1 поток).
+// wal=false — прежний режим: rollback journal, одно соединение на всё; wal=true — WAL, писатель и пул чтения.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SQLiteJoinBenchmark {
+    private static final int PLAYERS = 10_000;
+
+    @Param({"false", "true"})
+    public boolean wal;
+
+    private Path folder;
+    private AuditLogger auditLogger;
+    private DatabaseManager databaseManager;
+    private PlayerRepository players;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, SQLException {
+        folder = Files.createTempDirectory("authcraft-bench");
+        MemoryConfiguration config = new MemoryConfiguration();
+        config.set("database.type", "sqlite");
+        config.set("database.sqlite.wal", wal);
+        config.set("database.backup.enabled", false);
+        auditLogger = new AuditLogger(folder.toFile(), config, Logger.getLogger("SQLiteJoinBenchmark"));
+        databaseManager = new DatabaseManager(folder.toFile(), config, auditLogger);
+        players = databaseManager.getPlayers();
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "INSERT INTO players (identifier, username, password, role, last_login) VALUES (?, ?, ?, ?, ?)")) {
+            conn.setAutoCommit(false);
+            for (int i = 0; i < PLAYERS; i++) {
+                stmt.setString(1, identifier(i));
+                stmt.setString(2, "player" + i);
+                stmt.setString(3, "$2a$10$benchmarkbenchmarkbenchmarkbenchmarkbenchmarkbenchmarkbe");
+                stmt.setString(4, "default");
+                stmt.setLong(5, System.currentTimeMillis());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            conn.commit();
+            conn.setAutoCommit(true);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        databaseManager.close();
+        auditLogger.close();
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private static String identifier(int i) {
+        return "00000000-0000-0000-0000-" + String.format("%012d", i);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public PlayerData join() throws SQLException {
+        return players.find(identifier(ThreadLocalRandom.current().nextInt(PLAYERS)));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public boolean write() throws SQLException {
+        int i = ThreadLocalRandom.current().nextInt(PLAYERS);
+        return players.updatePassword(identifier(i), "$2a$10$changedchangedchangedchangedchangedchangedchangedchange" + (i & 7));
+    }
+}
@@ -0,0 +1,638 @@
+package com.httydcraft.authcraft;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Индекс журнала аудита. Архивный сегмент (audit-*.log.gz) сжимается блоками —
+// каждый блок отдельный gzip-member, так что его можно прочитать с нужного смещения.
+// Рядом лежит audit-*.idx: границы времени сегмента и блоков (разреженный индекс
+// по времени), отсортированный каталог ключей со смещениями и для каждого
+// игрока/идентификатора/IP — номера блоков с его записями. Поиск ключа — бинарный
+// по каталогу, читаются только нужные записи индекса и блоки.
+// По активному audit.log и по ротированным файлам, которые ещё ждут сжатия в фоновом
+// потоке, индекс держится в памяти: ключ -> смещения строк.
+public class AuditIndex {
+    private static final int MAGIC = 0x41554458;
+    // 3: в индекс попадают и строки старого формата "[время] сообщение"
+    private static final int VERSION = 3;
+    // magic, version, first, last, число блоков
+    private static final int HEADER_SIZE = 28;
+    // offset, lines, firstTimestamp, lastTimestamp
+    private static final int BLOCK_ENTRY_SIZE = 28;
+    private static final int BLOCK_LINES = 512;
+
+    private final File folder;
+    private final File activeFile;
+    private final Logger logger;
+    private final ExecutorService worker;
+    private volatile boolean loading = true;
+
+    // Архивные сегменты, от старых к новым; заменяется целиком под synchronized (this)
+    private volatile List<Segment> segments = new ArrayList<>();
+    // Индекс активного файла и ротированных, но ещё не сжатых; доступ под synchronized (this)
+    private RawLog active;
+    private final List<RawLog> rotated = new ArrayList<>();
+
+    private static class Segment {
+        final File data;
+        final File index;
+        final long firstTimestamp;
+        final long lastTimestamp;
+
+        Segment(File data, File index, long firstTimestamp, long lastTimestamp) {
+            this.data = data;
+            this.index = index;
+            this.firstTimestamp = firstTimestamp;
+            this.lastTimestamp = lastTimestamp;
+        }
+    }
+
+    private static class Block {
+        long offset;
+        int lines;
+        long firstTimestamp = Long.MAX_VALUE;
+        long lastTimestamp = Long.MIN_VALUE;
+    }
+
+    // Несжатый файл журнала: ключ -> смещения строк
+    private static class RawLog {
+        File file;
+        final Map<String, List<Long>> offsets = new HashMap<>();
+        // Смещение первой записи, пришедшей через onAppend; всё, что до него, добавляет фоновая загрузка
+        long appendedFrom = Long.MAX_VALUE;
+
+        RawLog(File file) {
+            this.file = file;
+        }
+
+        void add(AuditRecord record, long offset) {
+            for (String key : record.indexKeys()) {
+                offsets.computeIfAbsent(key, k -> new ArrayList<>()).add(offset);
+            }
+        }
+    }
+
+    public AuditIndex(File folder, File activeFile, Logger logger) {
+        this.folder = folder;
+        this.activeFile = activeFile;
+        this.logger = logger;
+        this.active = new RawLog(activeFile);
+        this.worker = Executors.newSingleThreadExecutor(new NamedThreadFactory("AuthCraft-Audit-Index"));
+    }
+
+    // Вызывается до запуска потока записи. Список файлов снимается сразу, а индексация
+    // (audit.log, недожатые и старые архивы) идёт в фоне: запись журнала её не ждёт,
+    // поиск до окончания отвечает по тому, что уже проиндексировано (см. isLoading)
+    public void start() {
+        File[] files = folder.listFiles((dir, name) -> name.startsWith("audit-"));
+        RawLog target;
+        synchronized (this) {
+            target = active;
+        }
+        worker.execute(() -> load(files == null ? new File[0] : files, target));
+    }
+
+    private void load(File[] files, RawLog target) {
+        List<File> unarchived = new ArrayList<>();
+        List<Segment> loaded = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(".tmp")) {
+                // Недописанный архив или индекс: исходный .log остался и будет сжат заново
+                file.delete();
+            } else if (name.endsWith(".log")) {
+                unarchived.add(file);
+            } else if (name.endsWith(".log.gz")) {
+                Segment segment = hasCurrentIndex(file) ? readSegment(file) : null;
+                if (segment != null) {
+                    loaded.add(segment);
+                } else {
+                    unarchived.add(file);
+                }
+            }
+        }
+        // Сначала то, что дёшево: заголовки готовых индексов и свежий audit.log
+        addSegments(loaded);
+        rebuildActive(target);
+        for (File file : unarchived) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            try {
+                if (file.getName().endsWith(".log")) {
+                    archive(file, null);
+                } else {
+                    reindexLegacy(file);
+                }
+            } catch (IOException e) {
+                logger.warning("Failed to index audit segment " + file.getName() + ": " + e.getMessage());
+            }
+        }
+        loading = false;
+        if (!unarchived.isEmpty()) {
+            logger.info("Indexed " + unarchived.size() + " audit log segments");
+        }
+    }
+
+    private Segment readSegment(File data) {
+        File index = indexFileFor(data);
+        try (DataInputStream in = openIndex(index)) {
+            return new Segment(data, index, in.readLong(), in.readLong());
+        } catch (IOException e) {
+            logger.warning("Failed to load audit index " + index.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Сегмент с тем же файлом данных (повторная архивация после сбоя) заменяется
+    private synchronized void addSegments(List<Segment> added) {
+        List<Segment> updated = new ArrayList<>(segments.size() + added.size());
+        for (Segment segment : segments) {
+            boolean replaced = false;
+            for (Segment other : added) {
+                replaced |= other.data.equals(segment.data);
+            }
+            if (!replaced) {
+                updated.add(segment);
+            }
+        }
+        updated.addAll(added);
+        updated.sort(Comparator.comparingLong(segment -> segment.firstTimestamp));
+        segments = updated;
+    }
+
+    // Строки, записанные до запуска; новые уже пришли через onAppend
+    private void rebuildActive(RawLog target) {
+        RawLog scanned = new RawLog(target.file);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(target.file.toPath()), 64 * 1024)) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+            long offset = 0;
+            int length;
+            while ((length = readLine(in, buffer)) >= 0) {
+                synchronized (this) {
+                    if (offset >= target.appendedFrom) {
+                        break;
+                    }
+                }
+                AuditRecord record = AuditRecord.parse(buffer.toString("UTF-8"));
+                if (record != null) {
+                    scanned.add(record, offset);
+                }
+                offset += length;
+            }
+        } catch (NoSuchFileException e) {
+            // Журнала ещё нет
+        } catch (IOException e) {
+            logger.warning("Failed to index audit log: " + e.getMessage());
+        }
+        synchronized (this) {
+            // Старые смещения идут перед пришедшими через onAppend, порядок по возрастанию сохраняется
+            for (Map.Entry<String, List<Long>> entry : scanned.offsets.entrySet()) {
+                List<Long> appended = target.offsets.get(entry.getKey());
+                if (appended != null) {
+                    entry.getValue().addAll(appended);
+                }
+                target.offsets.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    // Запись будет дописана в активный файл по смещению offset. Вызывается до записи байтов,
+    // чтобы фоновая загрузка не проиндексировала строку второй раз
+    public synchronized void onAppend(AuditRecord record, long offset) {
+        if (active.appendedFrom == Long.MAX_VALUE) {
+            active.appendedFrom = offset;
+        }
+        active.add(record, offset);
+    }
+
+    // Вызывается потоком записи: активный файл переименован в raw и больше не дописывается.
+    // Его индекс остаётся в памяти, пока фоновый поток сжимает файл блоками и пишет .idx
+    public void onRotated(File raw) {
+        RawLog archived;
+        synchronized (this) {
+            archived = active;
+            archived.file = raw;
+            rotated.add(archived);
+            active = new RawLog(activeFile);
+        }
+        try {
+            worker.execute(() -> {
+                try {
+                    archive(raw, archived);
+                } catch (IOException e) {
+                    // Файл остаётся несжатым и доступным для поиска; при следующем запуске сожмётся заново
+                    logger.warning("Failed to archive audit log " + raw.getName() + ": " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Закрывается: сожмётся при следующем запуске
+        }
+    }
+
+    // Даёт дожать ротированные файлы, но не ждёт долгой переиндексации старых архивов
+    public void close() {
+        worker.shutdown();
+        try {
+            if (!worker.awaitTermination(5, TimeUnit.SECONDS)) {
+                worker.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            worker.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // archived — индекс этого файла в памяти (null при загрузке); убирается вместе с появлением сегмента
+    private void archive(File raw, RawLog archived) throws IOException {
+        String baseName = raw.getName().substring(0, raw.getName().length() - ".log".length());
+        File data = new File(folder, baseName + ".log.gz");
+        File index = new File(folder, baseName + ".idx");
+        File tmpData = new File(folder, baseName + ".log.gz.tmp");
+        List<Block> blocks = new ArrayList<>();
+        Map<String, List<Integer>> postings = new TreeMap<>();
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(raw.toPath()), 64 * 1024);
+             FileOutputStream fileOut = new FileOutputStream(tmpData);
+             BufferedOutputStream out = new BufferedOutputStream(fileOut, 64 * 1024)) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+            GZIPOutputStream gzip = null;
+            Block block = null;
+            while (readLine(in, buffer) >= 0) {
+                if (block == null) {
+                    out.flush();
+                    block = new Block();
+                    block.offset = fileOut.getChannel().position();
+                    gzip = new GZIPOutputStream(new NonClosingOutputStream(out), 64 * 1024);
+                }
+                buffer.writeTo(gzip);
+                gzip.write('\n');
+                block.lines++;
+                AuditRecord record = AuditRecord.parse(buffer.toString("UTF-8"));
+                if (record != null) {
+                    long timestamp = record.getTimestamp();
+                    block.firstTimestamp = Math.min(block.firstTimestamp, timestamp);
+                    block.lastTimestamp = Math.max(block.lastTimestamp, timestamp);
+                    first = Math.min(first, timestamp);
+                    last = Math.max(last, timestamp);
+                    Integer blockId = blocks.size();
+                    for (String key : record.indexKeys()) {
+                        List<Integer> ids = postings.computeIfAbsent(key, k -> new ArrayList<>());
+                        if (ids.isEmpty() || !ids.get(ids.size() - 1).equals(blockId)) {
+                            ids.add(blockId);
+                        }
+                    }
+                }
+                if (block.lines >= BLOCK_LINES) {
+                    gzip.finish();
+                    blocks.add(block);
+                    block = null;
+                }
+            }
+            if (block != null) {
+                gzip.finish();
+                blocks.add(block);
+            }
+        }
+
+        // Индекс появляется под своим именем только целиком
+        File tmpIndex = new File(folder, baseName + ".idx.tmp");
+        writeIndex(tmpIndex, first, last, blocks, postings);
+        Files.move(tmpIndex.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tmpData.toPath(), data.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        synchronized (this) {
+            addSegments(Collections.singletonList(new Segment(data, index, first, last)));
+            rotated.remove(archived);
+        }
+        Files.delete(raw.toPath());
+    }
+
+    // Каталог ключей: keyCount смещений (long) на записи "длина ключа (short), ключ в UTF-8,
+    // число блоков, номера блоков" в порядке возрастания ключа
+    private static void writeIndex(File index, long first, long last, List<Block> blocks,
+                                   Map<String, List<Integer>> postings) throws IOException {
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(postings.size() * 32);
+        DataOutputStream records = new DataOutputStream(recordBytes);
+        long[] recordOffsets = new long[postings.size()];
+        long recordsStart = HEADER_SIZE + (long) blocks.size() * BLOCK_ENTRY_SIZE + 4 + postings.size() * 8L;
+        int i = 0;
+        for (Map.Entry<String, List<Integer>> entry : postings.entrySet()) {
+            recordOffsets[i++] = recordsStart + records.size();
+            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            records.writeShort(key.length);
+            records.write(key);
+            records.writeInt(entry.getValue().size());
+            for (int blockId : entry.getValue()) {
+                records.writeInt(blockId);
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(index)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(first);
+            out.writeLong(last);
+            out.writeInt(blocks.size());
+            for (Block block : blocks) {
+                out.writeLong(block.offset);
+                out.writeInt(block.lines);
+                out.writeLong(block.firstTimestamp);
+                out.writeLong(block.lastTimestamp);
+            }
+            out.writeInt(recordOffsets.length);
+            for (long offset : recordOffsets) {
+                out.writeLong(offset);
+            }
+            recordBytes.writeTo(out);
+        }
+    }
+
+    // Архив предыдущей версии — один gzip без индекса или с индексом старого формата:
+    // распаковываем (блоки — обычные gzip-member) и пересжимаем блоками
+    private void reindexLegacy(File gzip) throws IOException {
+        File raw = new File(folder, gzip.getName().substring(0, gzip.getName().length() - ".gz".length()));
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(gzip.toPath()), 64 * 1024)) {
+            Files.copy(in, raw.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        archive(raw, null);
+    }
+
+    // Записи по игроку, идентификатору или IP начиная с since, новые первыми
+    public List<AuditRecord> search(String query, long since, int limit) throws IOException {
+        String key = query.toLowerCase(Locale.ROOT);
+        List<AuditRecord> results = new ArrayList<>();
+        // Несжатые файлы и сегменты снимаются вместе: файл, сжатый после снимка, ищется через fallback
+        Map<File, List<Long>> raw = new LinkedHashMap<>();
+        List<Segment> snapshot;
+        synchronized (this) {
+            addOffsets(raw, active, key);
+            for (RawLog log : rotated) {
+                addOffsets(raw, log, key);
+            }
+            snapshot = segments;
+        }
+        for (Map.Entry<File, List<Long>> entry : raw.entrySet()) {
+            searchRaw(entry.getKey(), key, since, entry.getValue(), results);
+        }
+        for (int i = snapshot.size() - 1; i >= 0 && results.size() < limit; i--) {
+            Segment segment = snapshot.get(i);
+            if (segment.lastTimestamp >= since) {
+                searchSegment(segment, key, since, results);
+            }
+        }
+        results.sort(Comparator.comparingLong(AuditRecord::getTimestamp).reversed());
+        return results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+    }
+
+    private static void addOffsets(Map<File, List<Long>> raw, RawLog log, String key) {
+        List<Long> offsets = log.offsets.get(key);
+        if (offsets != null) {
+            raw.put(log.file, new ArrayList<>(offsets));
+        }
+    }
+
+    private void searchRaw(File rawFile, String key, long since, List<Long> offsets, List<AuditRecord> results) throws IOException {
+        RandomAccessFile file;
+        try {
+            file = new RandomAccessFile(rawFile, "r");
+        } catch (FileNotFoundException e) {
+            // Ротированный файл уже сжат и удалён — читаем его сегмент
+            Segment archived = findSegment(rawFile);
+            if (archived != null && archived.lastTimestamp >= since) {
+                searchSegment(archived, key, since, results);
+            }
+            return;
+        }
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+            for (long offset : offsets) {
+                if (offset >= file.length()) {
+                    break;
+                }
+                file.getChannel().position(offset);
+                InputStream in = new BufferedInputStream(Channels.newInputStream(file.getChannel()), 1024);
+                if (readLine(in, buffer) < 0) {
+                    break;
+                }
+                // Между снимком и чтением файл мог быть ротирован — проверяем запись заново
+                addIfMatches(AuditRecord.parse(buffer.toString("UTF-8")), key, since, results);
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    private Segment findSegment(File rawFile) {
+        String name = rawFile.getName() + ".gz";
+        for (Segment segment : segments) {
+            if (segment.data.getName().equals(name)) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    private void searchSegment(Segment segment, String key, long since, List<AuditRecord> results) throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        try (FileChannel index = FileChannel.open(segment.index.toPath())) {
+            ByteBuffer header = read(index, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Unsupported index format");
+            }
+            header.getLong();
+            header.getLong();
+            int blockCount = header.getInt();
+            long keysAt = HEADER_SIZE + (long) blockCount * BLOCK_ENTRY_SIZE;
+            int keyCount = read(index, keysAt, 4).getInt();
+            long recordAt = findKey(index, keysAt + 4, keyCount, key);
+            if (recordAt < 0) {
+                return;
+            }
+            int keyLength = read(index, recordAt, 2).getShort() & 0xffff;
+            int count = read(index, recordAt + 2 + keyLength, 4).getInt();
+            ByteBuffer ids = read(index, recordAt + 6 + keyLength, count * 4);
+            for (int i = 0; i < count; i++) {
+                int blockId = ids.getInt();
+                ByteBuffer entry = read(index, HEADER_SIZE + (long) blockId * BLOCK_ENTRY_SIZE, BLOCK_ENTRY_SIZE);
+                Block block = new Block();
+                block.offset = entry.getLong();
+                block.lines = entry.getInt();
+                block.firstTimestamp = entry.getLong();
+                block.lastTimestamp = entry.getLong();
+                if (block.lastTimestamp >= since) {
+                    blocks.add(block);
+                }
+            }
+        }
+        if (blocks.isEmpty()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(segment.data.toPath())) {
+            for (Block block : blocks) {
+                channel.position(block.offset);
+                // close() освобождает Inflater блока, но не закрывает канал
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        new GZIPInputStream(new NonClosingInputStream(Channels.newInputStream(channel)), 8 * 1024),
+                        StandardCharsets.UTF_8))) {
+                    for (int i = 0; i < block.lines; i++) {
+                        String line = reader.readLine();
+                        if (line == null) {
+                            break;
+                        }
+                        addIfMatches(AuditRecord.parse(line), key, since, results);
+                    }
+                }
+            }
+        }
+    }
+
+    // Бинарный поиск по каталогу ключей; смещение записи ключа или -1
+    private static long findKey(FileChannel index, long directoryAt, int keyCount, String key) throws IOException {
+        int low = 0;
+        int high = keyCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long recordAt = read(index, directoryAt + mid * 8L, 8).getLong();
+            int keyLength = read(index, recordAt, 2).getShort() & 0xffff;
+            String indexed = new String(read(index, recordAt + 2, keyLength).array(), StandardCharsets.UTF_8);
+            int compare = indexed.compareTo(key);
+            if (compare == 0) {
+                return recordAt;
+            } else if (compare < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated audit index");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void addIfMatches(AuditRecord record, String key, long since, List<AuditRecord> results) {
+        if (record != null && record.getTimestamp() >= since && record.matches(key)) {
+            results.add(record);
+        }
+    }
+
+    private static DataInputStream openIndex(File index) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index.toPath())));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            in.close();
+            throw new IOException("Unsupported index format");
+        }
+        return in;
+    }
+
+    private File indexFileFor(File gzip) {
+        return new File(folder, gzip.getName().replace(".log.gz", ".idx"));
+    }
+
+    private boolean hasCurrentIndex(File gzip) {
+        File index = indexFileFor(gzip);
+        if (!index.exists()) {
+            return false;
+        }
+        try {
+            // openIndex проверяет заголовок и версию формата
+            openIndex(index).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Читает строку без '\n' в buffer; возвращает число прочитанных байт или -1 в конце файла
+    private static int readLine(InputStream in, ByteArrayOutputStream buffer) throws IOException {
+        buffer.reset();
+        int length = 0;
+        int b;
+        while ((b = in.read()) != -1) {
+            length++;
+            if (b == '\n') {
+                return length;
+            }
+            buffer.write(b);
+        }
+        return length == 0 ? -1 : length;
+    }
+
+    private static class NonClosingInputStream extends FilterInputStream {
+        NonClosingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+            // Канал закрывает владелец
+        }
+    }
+
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
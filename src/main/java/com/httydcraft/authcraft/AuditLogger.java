@@ -1,41 +1,218 @@
 package com.httydcraft.authcraft;
 
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
 
+// Асинхронный журнал: вызывающий поток только кладёт запись в очередь,
+// отдельный поток пишет пачками в один открытый файл, ротирует и индексирует его.
 public class AuditLogger {
-    private final AuthCraft plugin;
+    private static final DateTimeFormatter ARCHIVE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneId.systemDefault());
+    private static final int BATCH_SIZE = 256;
+
+    private final File dataFolder;
+    private final Logger logger;
     private final File logFile;
+    private final AuditIndex index;
+    private final ConcurrentLinkedQueue<AuditRecord> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final int capacity;
+    private final boolean dropOnOverflow;
+    private final long maxFileSize;
+    private final long rotateIntervalMillis;
+    private final long flushIntervalNanos;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    private OutputStream writer;
+    private long fileSize;
+    private long fileOpenedAt;
 
     public AuditLogger(AuthCraft plugin) {
-        this.plugin = plugin;
-        this.logFile = new File(plugin.getDataFolder(), "audit.log");
+        this(plugin.getDataFolder(), plugin.getConfig(), plugin.getLogger());
+    }
+
+    // Без экземпляра плагина (бенчмарки): папка данных, секция конфига с audit.* и логгер
+    public AuditLogger(File dataFolder, ConfigurationSection config, Logger logger) {
+        this.dataFolder = dataFolder;
+        this.logger = logger;
+        this.logFile = new File(dataFolder, "audit.log");
+        this.capacity = Math.max(16, config.getInt("audit.queue_size", 8192));
+        this.dropOnOverflow = config.getString("audit.overflow", "drop").equalsIgnoreCase("drop");
+        this.maxFileSize = config.getLong("audit.max_file_size_mb", 10) * 1024L * 1024L;
+        this.rotateIntervalMillis = TimeUnit.HOURS.toMillis(config.getLong("audit.rotate_interval_hours", 24));
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(10, config.getLong("audit.flush_interval_ms", 200)));
         ensureLogFile();
+        this.index = new AuditIndex(dataFolder, logFile, logger);
+        this.index.start();
+        this.writerThread = new Thread(this::writeLoop, "AuthCraft-Audit");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
     }
 
     private void ensureLogFile() {
-        if (!plugin.getDataFolder().exists()) {
-            plugin.getDataFolder().mkdirs();
+        if (!dataFolder.exists()) {
+            dataFolder.mkdirs();
         }
         if (!logFile.exists()) {
             try {
                 logFile.createNewFile();
             } catch (IOException e) {
-                plugin.getLogger().severe("Failed to create audit log file: " + e.getMessage());
+                logger.severe("Failed to create audit log file: " + e.getMessage());
             }
         }
     }
 
     public void log(String message) {
-        String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
-        String logEntry = "[" + timestamp + "] " + message + "\n";
-        try (FileWriter writer = new FileWriter(logFile, true)) {
-            writer.write(logEntry);
-        } catch (IOException e) {
-            plugin.getLogger().warning("Failed to write to audit log: " + e.getMessage());
+        log(AuditRecord.Type.SYSTEM, null, null, null, null, message);
+    }
+
+    public void log(AuditRecord.Type type, String actor, String identifier, String ip, String outcome, String details) {
+        AuditRecord entry = new AuditRecord(System.currentTimeMillis(), type, actor, identifier, ip, outcome, details);
+        while (queued.incrementAndGet() > capacity) {
+            queued.decrementAndGet();
+            if (dropOnOverflow || !running) {
+                dropped.incrementAndGet();
+                return;
+            }
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(100_000L);
+        }
+        queue.offer(entry);
+        if (queued.get() >= BATCH_SIZE) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    private void writeLoop() {
+        while (running || !queue.isEmpty()) {
+            if (queue.isEmpty()) {
+                LockSupport.parkNanos(flushIntervalNanos);
+                continue;
+            }
+            try {
+                writeBatch();
+            } catch (IOException e) {
+                logger.warning("Failed to write to audit log: " + e.getMessage());
+                closeWriter();
+                LockSupport.parkNanos(flushIntervalNanos);
+            }
+        }
+        closeWriter();
+    }
+
+    // Групповая запись: всё, что накопилось в очереди, и один flush
+    private void writeBatch() throws IOException {
+        if (writer == null) {
+            openWriter();
+        }
+        AuditRecord entry;
+        while ((entry = queue.poll()) != null) {
+            queued.decrementAndGet();
+            byte[] line = entry.toLine().getBytes(StandardCharsets.UTF_8);
+            index.onAppend(entry, fileSize);
+            writer.write(line);
+            fileSize += line.length;
+            written.incrementAndGet();
+            if (needsRotation()) {
+                writer.flush();
+                rotate();
+            }
+        }
+        writer.flush();
+    }
+
+    private void openWriter() throws IOException {
+        OutputStream out = Files.newOutputStream(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        writer = new BufferedOutputStream(out, 64 * 1024);
+        fileSize = logFile.length();
+        fileOpenedAt = System.currentTimeMillis();
+    }
+
+    private boolean needsRotation() {
+        return (maxFileSize > 0 && fileSize >= maxFileSize)
+                || (rotateIntervalMillis > 0 && System.currentTimeMillis() - fileOpenedAt >= rotateIntervalMillis);
+    }
+
+    private void rotate() throws IOException {
+        closeWriter();
+        String baseName = "audit-" + ARCHIVE_FORMAT.format(Instant.now());
+        File archive = new File(dataFolder, baseName + ".log");
+        for (int i = 1; archive.exists() || new File(archive.getPath() + ".gz").exists(); i++) {
+            archive = new File(dataFolder, baseName + "-" + i + ".log");
+        }
+        boolean renamed = logFile.renameTo(archive);
+        openWriter();
+        if (renamed) {
+            index.onRotated(archive);
+        } else {
+            logger.warning("Failed to rotate audit log to " + archive.getName());
+            // Не пытаемся ротировать на каждой записи
+            fileSize = 0;
+        }
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logger.warning("Failed to close audit log: " + e.getMessage());
+            }
+            writer = null;
+        }
+    }
+
+    // Поиск по индексу; вызывать не из главного потока
+    public List<AuditRecord> search(String query, long since, int limit) throws IOException {
+        return index.search(query, since, limit);
+    }
+
+    // Индекс ещё строится в фоне: результаты поиска могут быть неполными
+    public boolean isIndexing() {
+        return index.isLoading();
+    }
+
+    public int getQueueDepth() {
+        return Math.max(0, queued.get());
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    // Дописывает очередь на диск и останавливает поток записи (onDisable)
+    public void close() {
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        index.close();
     }
 }
@@ -0,0 +1,205 @@
+package com.httydcraft.authcraft;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Одна запись журнала аудита. В файле — строка с полями через табуляцию:
+// epochMillis, время, тип, actor, identifier, ip, outcome, details.
+// Строки старых версий ("[yyyy-MM-dd HH:mm:ss] сообщение") читаются как SYSTEM-записи,
+// игрок, UUID и IP для индекса достаются из текста сообщения
+public class AuditRecord {
+    private static final DateTimeFormatter TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final String EMPTY = "-";
+    private static final Pattern LEGACY_LINE = Pattern.compile("\\[(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2})] (.*)");
+    private static final Pattern IPV4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+    private static final Pattern IPV6 = Pattern.compile("[0-9a-fA-F]{0,4}(:[0-9a-fA-F]{0,4}){2,7}");
+    private static final Pattern UUID_TEXT = Pattern.compile("[0-9a-fA-F]{8}(-[0-9a-fA-F]{4}){3}-[0-9a-fA-F]{12}");
+    private static final Pattern PLAYER_NAME = Pattern.compile("[A-Za-z0-9_]{3,16}");
+    // Слова, после которых в старых сообщениях шёл ник игрока
+    private static final Set<String> NAME_MARKERS = new HashSet<>(Arrays.asList(
+            "for", "player", "для", "игроку", "игрока", "у"));
+
+    public enum Type {
+        SYSTEM,
+        REGISTER,
+        LOGIN,
+        LOGOUT,
+        CHANGE_PASSWORD,
+        TWO_FACTOR,
+        CONNECTION,
+        ADMIN
+    }
+
+    private final long timestamp;
+    private final Type type;
+    private final String actor;
+    private final String identifier;
+    private final String ip;
+    private final String outcome;
+    private final String details;
+    private final boolean legacy;
+
+    public AuditRecord(long timestamp, Type type, String actor, String identifier, String ip, String outcome, String details) {
+        this.timestamp = timestamp;
+        this.type = type;
+        this.actor = clean(actor);
+        this.identifier = clean(identifier);
+        this.ip = clean(ip);
+        this.outcome = clean(outcome);
+        this.details = clean(details);
+        this.legacy = false;
+    }
+
+    private AuditRecord(long timestamp, String actor, String identifier, String ip, String message) {
+        this.timestamp = timestamp;
+        this.type = Type.SYSTEM;
+        this.actor = clean(actor);
+        this.identifier = clean(identifier);
+        this.ip = clean(ip);
+        this.outcome = EMPTY;
+        this.details = clean(message);
+        this.legacy = true;
+    }
+
+    private static String clean(String value) {
+        if (value == null || value.isEmpty()) {
+            return EMPTY;
+        }
+        return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    public String toLine() {
+        return timestamp + "\t" + TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(timestamp)) + "\t" + type
+                + "\t" + actor + "\t" + identifier + "\t" + ip + "\t" + outcome + "\t" + details + "\n";
+    }
+
+    // null — строка не распознана ни в текущем, ни в старом формате
+    public static AuditRecord parse(String line) {
+        String[] fields = line.split("\t", 8);
+        if (fields.length != 8) {
+            return parseLegacy(line);
+        }
+        try {
+            return new AuditRecord(Long.parseLong(fields[0]), Type.valueOf(fields[2]), fields[3], fields[4],
+                    fields[5], fields[6], fields[7]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Старая строка без полей: ключи ищутся в тексте по мере возможности (первый ник, UUID и IP)
+    private static AuditRecord parseLegacy(String line) {
+        Matcher matcher = LEGACY_LINE.matcher(line);
+        if (!matcher.matches()) {
+            return null;
+        }
+        long timestamp;
+        try {
+            timestamp = LocalDateTime.parse(matcher.group(1), TIMESTAMP_FORMAT)
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+        String message = matcher.group(2);
+        String name = null;
+        String uuid = null;
+        String ip = null;
+        String previous = "";
+        for (String word : message.split("\\s+")) {
+            // "for IP 1.2.3.4:", "'admin'", "Steve." — без кавычек и знаков препинания по краям
+            String token = trimPunctuation(word);
+            if (ip == null && isIpLiteral(token)) {
+                ip = token;
+            } else if (uuid == null && UUID_TEXT.matcher(token).matches()) {
+                uuid = token;
+            } else if (name == null && NAME_MARKERS.contains(previous) && PLAYER_NAME.matcher(token).matches()) {
+                name = token;
+            }
+            previous = token.toLowerCase(Locale.ROOT);
+        }
+        return new AuditRecord(timestamp, name, uuid, ip, message);
+    }
+
+    // IPv6 — только полный (7 двоеточий) или сокращённый через "::", чтобы не принять время 12:30:45
+    private static boolean isIpLiteral(String token) {
+        if (IPV4.matcher(token).matches()) {
+            return true;
+        }
+        if (!IPV6.matcher(token).matches()) {
+            return false;
+        }
+        int colons = 0;
+        for (int i = 0; i < token.length(); i++) {
+            if (token.charAt(i) == ':') {
+                colons++;
+            }
+        }
+        return colons == 7 || token.contains("::");
+    }
+
+    private static String trimPunctuation(String word) {
+        int start = 0;
+        int end = word.length();
+        while (start < end && "'\"([<".indexOf(word.charAt(start)) >= 0) {
+            start++;
+        }
+        while (end > start && "'\")]>,.;:!?".indexOf(word.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return word.substring(start, end);
+    }
+
+    // Ключи для индекса: игрок, идентификатор и IP в нижнем регистре
+    public List<String> indexKeys() {
+        List<String> keys = new ArrayList<>(3);
+        addKey(keys, actor);
+        addKey(keys, identifier);
+        addKey(keys, ip);
+        return keys;
+    }
+
+    private static void addKey(List<String> keys, String value) {
+        if (!value.equals(EMPTY)) {
+            String key = value.toLowerCase(Locale.ROOT);
+            if (!keys.contains(key)) {
+                keys.add(key);
+            }
+        }
+    }
+
+    public boolean matches(String key) {
+        return actor.equalsIgnoreCase(key) || identifier.equalsIgnoreCase(key) || ip.equalsIgnoreCase(key);
+    }
+
+    public String format() {
+        if (legacy) {
+            return TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(timestamp)) + " " + details;
+        }
+        return TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(timestamp)) + " " + type + " " + actor + " "
+                + identifier + " " + ip + " " + outcome + (details.equals(EMPTY) ? "" : " " + details);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getOutcome() {
+        return outcome;
+    }
+}
@@ -4,15 +4,25 @@ import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
-import org.bukkit.entity.Player;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class AuthAdminCommand implements CommandExecutor {
+    private static final int AUDIT_SEARCH_LIMIT = 50;
+
     private final AuthManager authManager;
     private final MessageUtils messageUtils;
+    private final AuditLogger auditLogger;
 
     public AuthAdminCommand(AuthManager authManager, MessageUtils messageUtils) {
         this.authManager = authManager;
         this.messageUtils = messageUtils;
+        this.auditLogger = authManager.getPlugin().getUtilsManager().getAuditLogger();
     }
 
     @Override
@@ -22,11 +32,20 @@ public class AuthAdminCommand implements CommandExecutor {
             return true;
         }
         if (args.length < 2) {
-            sender.sendMessage("§cUsage: /authadmin <resetpw|disable2fa> <player>");
+            sender.sendMessage("§cUsage: /authadmin <resetpw|disable2fa> <player> or /authadmin audit <player|ip> [since]");
             return true;
         }
         String action = args[0].toLowerCase();
         String targetName = args[1];
+        if (action.equals("audit")) {
+            long since = args.length > 2 ? parseSince(args[2]) : 0;
+            if (since < 0) {
+                sender.sendMessage("§cInvalid time. Use a duration like 30m, 12h, 7d, 2w or a date like 2024-01-31.");
+                return true;
+            }
+            Bukkit.getScheduler().runTaskAsynchronously(authManager.getPlugin(), () -> searchAudit(sender, targetName, since));
+            return true;
+        }
         Bukkit.getScheduler().runTaskAsynchronously(authManager.getPlugin(), () -> {
             String identifier = targetName;
             if (!authManager.isRegistered(identifier)) {
@@ -35,6 +54,7 @@ public class AuthAdminCommand implements CommandExecutor {
             }
             if (action.equals("resetpw")) {
                 boolean ok = authManager.adminResetPassword(identifier);
+                auditLogger.log(AuditRecord.Type.ADMIN, sender.getName(), identifier, null, ok ? "SUCCESS" : "FAILED", "resetpw");
                 if (ok) {
                     sender.sendMessage("§aPassword for " + targetName + " has been reset. The player must register again.");
                 } else {
@@ -42,15 +62,65 @@ public class AuthAdminCommand implements CommandExecutor {
                 }
             } else if (action.equals("disable2fa")) {
                 boolean ok = authManager.adminDisable2FA(identifier);
+                auditLogger.log(AuditRecord.Type.ADMIN, sender.getName(), identifier, null, ok ? "SUCCESS" : "FAILED", "disable2fa");
                 if (ok) {
                     sender.sendMessage("§a2FA for " + targetName + " has been disabled.");
                 } else {
                     sender.sendMessage("§cFailed to disable 2FA.");
                 }
             } else {
-                sender.sendMessage("§cUnknown action. Use resetpw or disable2fa.");
+                sender.sendMessage("§cUnknown action. Use resetpw, disable2fa or audit.");
             }
         });
         return true;
     }
+
+    private void searchAudit(CommandSender sender, String query, long since) {
+        List<AuditRecord> records;
+        try {
+            records = auditLogger.search(query, since, AUDIT_SEARCH_LIMIT);
+        } catch (IOException e) {
+            sender.sendMessage("§cFailed to search the audit log: " + e.getMessage());
+            return;
+        }
+        if (auditLogger.isIndexing()) {
+            sender.sendMessage("§eThe audit log is still being indexed, older records may be missing.");
+        }
+        if (records.isEmpty()) {
+            sender.sendMessage("§cNo audit records found for " + query + ".");
+            return;
+        }
+        sender.sendMessage("§aAudit records for " + query + " (latest " + records.size() + "):");
+        for (AuditRecord record : records) {
+            sender.sendMessage("§7" + record.format());
+        }
+    }
+
+    // 30m, 12h, 7d, 2w или дата yyyy-MM-dd; -1 — не удалось разобрать
+    private static long parseSince(String value) {
+        String lower = value.toLowerCase();
+        if (lower.matches("\\d{1,6}[mhdw]")) {
+            long amount = Long.parseLong(lower.substring(0, lower.length() - 1));
+            long millis;
+            switch (lower.charAt(lower.length() - 1)) {
+                case 'm':
+                    millis = TimeUnit.MINUTES.toMillis(amount);
+                    break;
+                case 'h':
+                    millis = TimeUnit.HOURS.toMillis(amount);
+                    break;
+                case 'd':
+                    millis = TimeUnit.DAYS.toMillis(amount);
+                    break;
+                default:
+                    millis = TimeUnit.DAYS.toMillis(amount * 7);
+            }
+            return Math.max(0, System.currentTimeMillis() - millis);
+        }
+        try {
+            return LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
 }
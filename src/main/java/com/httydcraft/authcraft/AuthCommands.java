@@ -1,12 +1,12 @@
 package com.httydcraft.authcraft;
 
+import com.httydcraft.authcraft.database.QueryMetrics;
+import com.httydcraft.authcraft.database.WriteBehindQueue;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
-import java.sql.SQLException;
-
 public class AuthCommands implements CommandExecutor {
     private final AuthCraft plugin;
     private final AuthManager authManager;
@@ -67,24 +67,83 @@ public class AuthCommands implements CommandExecutor {
                 messageUtils.sendMessage(player, "no_permission");
                 return true;
             }
-            if (args.length != 1 || !args[0].matches("backup|reload|stats")) {
+            boolean reloadRoles = args.length == 2 && args[0].equals("reload") && args[1].equals("roles");
+            if ((args.length != 1 || !args[0].matches("backup|reload|stats")) && !reloadRoles) {
                 messageUtils.sendMessage(player, "authcraft.usage");
                 return true;
             }
             if (args[0].equals("backup")) {
-                try {
-                    plugin.getDatabaseManager().backup();
-                } catch (SQLException e) {
-                    throw new RuntimeException(e);
-                }
-                messageUtils.sendMessage(player, "authcraft.backup_success");
+                messageUtils.sendMessage(player, "authcraft.backup_started");
+                plugin.getDatabaseManager().getBackups().backupNow().whenComplete((file, error) ->
+                        plugin.getServer().getScheduler().runTask(plugin, () -> {
+                            if (!player.isOnline()) {
+                                return;
+                            }
+                            if (error != null) {
+                                messageUtils.sendMessage(player, "authcraft.backup_failed");
+                            } else {
+                                player.sendMessage(messageUtils.getMessage("authcraft.backup_success").replace("{file}", file.getName()));
+                            }
+                        }));
+            } else if (reloadRoles) {
+                int changed = plugin.getRoleManager().reloadRoles();
+                player.sendMessage(messageUtils.getMessage("authcraft.roles_reloaded").replace("{changed}", String.valueOf(changed)));
             } else if (args[0].equals("reload")) {
                 plugin.reloadConfig();
+                authManager.getWarpChecker().reload();
                 messageUtils.sendMessage(player, "authcraft.reload_success");
             } else {
                 messageUtils.sendMessage(player, "authcraft.stats");
+                HashingExecutor hashing = authManager.getHashingExecutor();
+                player.sendMessage("§7Hashing: threads=" + hashing.getThreads()
+                        + ", active=" + hashing.getActiveCount()
+                        + ", queued=" + hashing.getQueueDepth() + "/" + hashing.getQueueCapacity()
+                        + ", completed=" + hashing.getCompletedCount());
+                player.sendMessage("§7Hashing rejected: queue_full=" + hashing.getRejectedQueueFull()
+                        + ", ip_limit=" + hashing.getRejectedIpLimit());
+                BoundedCache<String, CacheManager.CachedPlayer> cache = authManager.getCacheManager().getPlayerCache();
+                player.sendMessage("§7Player cache: size=" + cache.size() + "/" + cache.getMaxSize()
+                        + ", hits=" + cache.getHits() + ", misses=" + cache.getMisses()
+                        + ", evictions=" + cache.getEvictions());
+                WriteBehindQueue writeBehind = plugin.getDatabaseManager().getWriteBehind();
+                player.sendMessage("§7DB write-behind: pending=" + writeBehind.getPending() + ", recorded=" + writeBehind.getRecorded()
+                        + ", written=" + writeBehind.getWritten() + ", batches=" + writeBehind.getBatches()
+                        + ", failures=" + writeBehind.getFailures());
+                for (QueryMetrics.Stats query : plugin.getDatabaseManager().getQueryMetrics().snapshot()) {
+                    player.sendMessage(String.format("§7Query %s: count=%d, errors=%d, avg=%.2fms, max=%.2fms",
+                            query.getName(), query.getCount(), query.getErrors(), query.getAverageMillis(), query.getMaxMillis()));
+                }
+                AuditLogger audit = plugin.getUtilsManager().getAuditLogger();
+                player.sendMessage("§7Audit log: queued=" + audit.getQueueDepth() + ", written=" + audit.getWritten()
+                        + ", dropped=" + audit.getDropped());
+                CloudflareWarpChecker warp = authManager.getWarpChecker();
+                if (warp.isLocalMode()) {
+                    player.sendMessage("§7WARP (local): ranges=" + warp.getRangeCount() + ", lookups=" + warp.getLocalLookups());
+                }
+                player.sendMessage("§7WARP: lookups=" + warp.getLookups() + ", failures=" + warp.getFailures()
+                        + ", coalesced=" + warp.getCoalesced() + ", cache_hits=" + warp.getVerdictCache().getHits()
+                        + ", cache_misses=" + warp.getVerdictCache().getMisses()
+                        + ", latency_avg=" + warp.getAverageLatencyMillis() + "ms, latency_max=" + warp.getMaxLatencyMillis() + "ms");
+                sendOutboundStats(player, "Telegram", plugin.getBotManager().getTelegramOutbound());
+                sendOutboundStats(player, "VK", plugin.getBotManager().getVkOutbound());
+                TelegramWebhookServer webhook = plugin.getBotManager().getTelegramWebhook();
+                if (webhook != null) {
+                    player.sendMessage("§7Telegram webhook: received=" + webhook.getReceived() + ", rejected=" + webhook.getRejected());
+                }
+                VkLongPoll longPoll = plugin.getBotManager().getVkLongPoll();
+                if (longPoll != null) {
+                    player.sendMessage("§7VK Long Poll: polls=" + longPoll.getPolls() + ", received=" + longPoll.getReceived()
+                            + ", reconnects=" + longPoll.getReconnects());
+                }
             }
         }
         return true;
     }
+
+    private void sendOutboundStats(Player player, String name, OutboundMessenger outbound) {
+        player.sendMessage("§7" + name + " outbound: queued=" + outbound.getQueueDepth() + ", delivered=" + outbound.getDelivered()
+                + ", failed=" + outbound.getFailed() + ", dropped=" + outbound.getDropped()
+                + ", retries=" + outbound.getRetries() + ", coalesced=" + outbound.getCoalesced()
+                + ", latency_avg=" + outbound.getAverageLatencyMillis() + "ms, latency_max=" + outbound.getMaxLatencyMillis() + "ms");
+    }
 }
@@ -25,20 +25,30 @@ public class AuthCraft extends JavaPlugin {
         authManager = new AuthManager(this, databaseManager, utilsManager);
         botManager = new BotManager(this, authManager, utilsManager);
         roleManager = new RoleManager(this, utilsManager.getAuditLogger());
+        // Входящие сообщения ботов обращаются к getBotManager(), поэтому приём — только после присваивания
+        botManager.start();
 
         new AuthCommands(this, authManager, utilsManager).register();
         new TwoFACommand(this, authManager, botManager, utilsManager).register();
         new EventListener(this, authManager, utilsManager).register();
         getCommand("authadmin").setExecutor(new AuthAdminCommand(authManager, utilsManager.getMessageUtils()));
 
+        getServer().getScheduler().runTaskTimerAsynchronously(this, utilsManager.getCacheManager()::cleanUp, 1200L, 1200L);
+        getServer().getScheduler().runTaskTimerAsynchronously(this, utilsManager.getTOTPUtils()::cleanUp, 1200L, 1200L);
+
         createLimboWorld();
         getLogger().info("AuthCraft enabled successfully.");
     }
 
     @Override
     public void onDisable() {
-        databaseManager.close();
+        authManager.shutdown();
+        roleManager.shutdown();
+        // Боты до БД: потоки ботов ещё могут читать и писать привязки
         botManager.shutdown();
+        databaseManager.close();
+        utilsManager.getTimingWheel().stop();
+        utilsManager.getAuditLogger().close();
         getLogger().info("AuthCraft disabled.");
     }
 
@@ -0,0 +1,97 @@
+package com.httydcraft.authcraft;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.IllegalPluginAccessException;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+public class AuthExecutor {
+    // Ключ лимита по IP для игроков без известного адреса
+    private static final String UNKNOWN_IP = "unknown";
+
+    private final AuthCraft plugin;
+    private final AuditLogger auditLogger;
+    private final MessageUtils messageUtils;
+    private final HashingExecutor hashingExecutor;
+    // Игроки, у которых операция уже выполняется (не более одной на игрока)
+    private final Set<UUID> inFlight;
+
+    public AuthExecutor(AuthCraft plugin, UtilsManager utilsManager) {
+        this.plugin = plugin;
+        this.auditLogger = utilsManager.getAuditLogger();
+        this.messageUtils = utilsManager.getMessageUtils();
+        // Каждая операция упирается в BCrypt, поэтому выполняется прямо в пуле хеширования
+        this.hashingExecutor = new HashingExecutor(plugin);
+        this.inFlight = ConcurrentHashMap.newKeySet();
+    }
+
+    // Выполняет task в пуле хеширования, затем передаёт результат в callback в главном потоке
+    public <T> boolean submit(Player player, HashingExecutor.Priority priority, Callable<T> task, Consumer<T> callback) {
+        UUID playerId = player.getUniqueId();
+        if (!inFlight.add(playerId)) {
+            messageUtils.sendMessage(player, "auth.in_progress");
+            return false;
+        }
+        try {
+            String ip = AuthManager.getIp(player);
+            // Без адреса — общий лимит на всех таких игроков
+            hashingExecutor.execute(ip != null ? ip : UNKNOWN_IP, priority, () -> {
+                T result;
+                try {
+                    result = task.call();
+                } catch (Exception e) {
+                    auditLogger.log("Auth task failed for " + player.getName() + ": " + e.getMessage());
+                    complete(playerId, () -> messageUtils.sendMessage(player, "error.internal"));
+                    return;
+                }
+                complete(playerId, () -> {
+                    if (player.isOnline()) {
+                        callback.accept(result);
+                    }
+                });
+            });
+            return true;
+        } catch (HashingExecutor.IpLimitException e) {
+            inFlight.remove(playerId);
+            messageUtils.sendMessage(player, "auth.ip_limit");
+            return false;
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(playerId);
+            messageUtils.sendMessage(player, "auth.busy");
+            return false;
+        }
+    }
+
+    private void complete(UUID playerId, Runnable action) {
+        try {
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                try {
+                    action.run();
+                } finally {
+                    inFlight.remove(playerId);
+                }
+            });
+        } catch (IllegalPluginAccessException e) {
+            // Плагин выключается, главный поток больше не принимает задачи
+            inFlight.remove(playerId);
+        }
+    }
+
+    public boolean isInFlight(UUID playerId) {
+        return inFlight.contains(playerId);
+    }
+
+    public HashingExecutor getHashingExecutor() {
+        return hashingExecutor;
+    }
+
+    public void shutdown() {
+        hashingExecutor.shutdown();
+    }
+}
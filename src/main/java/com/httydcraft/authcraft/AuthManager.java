@@ -1,233 +1,578 @@
 package com.httydcraft.authcraft;
 
 import com.httydcraft.authcraft.database.DatabaseManager;
+import com.httydcraft.authcraft.database.PlayerData;
 import org.bukkit.Bukkit;
+import org.bukkit.World;
 import org.bukkit.entity.Player;
+import org.bukkit.plugin.IllegalPluginAccessException;
 import org.mindrot.jbcrypt.BCrypt;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class AuthManager {
     private final AuthCraft plugin;
     private final DatabaseManager databaseManager;
     private final MessageUtils messageUtils;
+    private final AuditLogger auditLogger;
+    private final CacheManager cacheManager;
     private final PasswordValidator passwordValidator;
     private final CloudflareWarpChecker warpChecker;
-    private final Map<UUID, PlayerState> playerStates;
+    private final PlayerStateStore playerStates;
+    private final TOTPUtils totpUtils;
+    // Записи игроков, прошедших пароль и ожидающих второй фактор
+    private final Map<UUID, PlayerData> pendingTwoFactor;
+    // Состояние полёта игрока до попадания в лимбо (только главный поток)
+    private final Map<UUID, boolean[]> savedFlight;
+    private World limboWorld;
+    private final AuthExecutor authExecutor;
     private final boolean useNickname;
+    private final TimingWheel timingWheel;
+    // Таймаут входа или ввода 2FA; один на игрока, пока он не авторизован
+    private final Map<UUID, TimingWheel.Timeout> sessionTimeouts;
+    private final long loginTimeout;
+    private final long twoFactorTimeout;
+
+    private enum AuthStatus {
+        SUCCESS,
+        TWO_FACTOR_REQUIRED,
+        ALREADY_REGISTERED,
+        INVALID_PASSWORD,
+        INVALID_CREDENTIALS,
+        DATABASE_ERROR
+    }
+
+    // Результат фоновой части операции, передаётся обратно в главный поток
+    private static class AuthResult {
+        final AuthStatus status;
+        final PlayerData data;
+
+        AuthResult(AuthStatus status, PlayerData data) {
+            this.status = status;
+            this.data = data;
+        }
+
+        static AuthResult of(AuthStatus status) {
+            return new AuthResult(status, null);
+        }
+    }
 
     public AuthManager(AuthCraft plugin, DatabaseManager databaseManager, UtilsManager utilsManager) {
         this.plugin = plugin;
         this.databaseManager = databaseManager;
         this.messageUtils = utilsManager.getMessageUtils();
+        this.auditLogger = utilsManager.getAuditLogger();
+        this.cacheManager = utilsManager.getCacheManager();
         this.passwordValidator = utilsManager.getPasswordValidator();
         this.warpChecker = utilsManager.getCloudflareWarpChecker();
-        this.playerStates = new HashMap<>();
+        this.playerStates = new PlayerStateStore();
+        this.totpUtils = utilsManager.getTOTPUtils();
+        this.pendingTwoFactor = new ConcurrentHashMap<>();
+        this.savedFlight = new HashMap<>();
+        this.authExecutor = new AuthExecutor(plugin, utilsManager);
         this.useNickname = plugin.getConfig().getString("auth.method", "uuid").equalsIgnoreCase("nickname");
+        this.timingWheel = utilsManager.getTimingWheel();
+        this.sessionTimeouts = new ConcurrentHashMap<>();
+        this.loginTimeout = plugin.getConfig().getLong("auth.login_timeout", 60);
+        this.twoFactorTimeout = plugin.getConfig().getLong("auth.two_factor_timeout", 120);
     }
 
     public void register(Player player, String password) {
-        if (playerStates.get(player.getUniqueId()) == PlayerState.AUTHENTICATED) {
-            messageUtils.sendMessage(player, "register.already_authenticated");
+        if (!checkUnauthenticated(player, "register.already_authenticated")) {
             return;
         }
-        String identifier = useNickname ? player.getName() : player.getUniqueId().toString();
-        if (isRegistered(identifier)) {
-            messageUtils.sendMessage(player, "register.already_registered");
-            return;
+        String identifier = getIdentifier(player);
+        String username = player.getName();
+        authExecutor.submit(player, HashingExecutor.Priority.NEW_ACCOUNT, () -> registerAsync(identifier, username, password), result -> {
+            if (result.status == AuthStatus.SUCCESS
+                    && !playerStates.transition(player.getUniqueId(), PlayerState.UNAUTHENTICATED, PlayerState.AUTHENTICATED)) {
+                stateChanged(AuditRecord.Type.REGISTER, player, result.status);
+                return;
+            }
+            audit(AuditRecord.Type.REGISTER, player, result.status.name());
+            switch (result.status) {
+                case ALREADY_REGISTERED:
+                    messageUtils.sendMessage(player, "register.already_registered");
+                    break;
+                case INVALID_PASSWORD:
+                    messageUtils.sendMessage(player, "register.invalid_password");
+                    break;
+                case SUCCESS:
+                    disarmTimeout(player.getUniqueId());
+                    recordLogin(identifier, player);
+                    messageUtils.sendMessage(player, "register.success");
+                    leaveLimbo(player);
+                    plugin.getRoleManager().assignRole(player, "player");
+                    break;
+                default:
+                    messageUtils.sendMessage(player, "error.database");
+            }
+        });
+    }
+
+    // /login и /register принимаются только до пароля; при ожидании 2FA повторный пароль ничего не даст
+    private boolean checkUnauthenticated(Player player, String alreadyAuthenticatedKey) {
+        PlayerState state = playerStates.get(player.getUniqueId());
+        if (state == PlayerState.AUTHENTICATED) {
+            messageUtils.sendMessage(player, alreadyAuthenticatedKey);
+            return false;
         }
-        if (!passwordValidator.isValidPassword(password, player.getName())) {
-            messageUtils.sendMessage(player, "register.invalid_password");
-            return;
+        if (state == PlayerState.PENDING_2FA) {
+            messageUtils.sendMessage(player, "auth.two_factor_pending");
+            return false;
+        }
+        return true;
+    }
+
+    // Фоновая часть завершилась, но состояние игрока уже не UNAUTHENTICATED (апрув через бота, /logout и т.п.)
+    private void stateChanged(AuditRecord.Type type, Player player, AuthStatus status) {
+        auditLogger.log(type, player.getName(), getIdentifier(player), getIp(player), "STATE_CHANGED", status.name());
+        messageUtils.sendMessage(player, playerStates.get(player.getUniqueId()) == PlayerState.PENDING_2FA
+                ? "auth.two_factor_pending" : "auth.state_changed");
+    }
+
+    private AuthResult registerAsync(String identifier, String username, String password) {
+        // Только кэш (заполнен при предлогине); в БД занятость проверяет сам INSERT
+        CacheManager.CachedPlayer cached = cacheManager.getPlayer(identifier);
+        if (cached != null && cached.isRegistered()) {
+            return AuthResult.of(AuthStatus.ALREADY_REGISTERED);
+        }
+        if (!passwordValidator.isValidPassword(password, username)) {
+            return AuthResult.of(AuthStatus.INVALID_PASSWORD);
         }
         String hashedPassword = BCrypt.hashpw(password, BCrypt.gensalt());
-        try (Connection conn = databaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "INSERT INTO players (identifier, username, password, role, last_login) VALUES (?, ?, ?, ?, ?)")) {
-            stmt.setString(1, identifier);
-            stmt.setString(2, player.getName());
-            stmt.setString(3, hashedPassword);
-            stmt.setString(4, "player");
-            stmt.setLong(5, System.currentTimeMillis());
-            stmt.executeUpdate();
-            playerStates.put(player.getUniqueId(), PlayerState.AUTHENTICATED);
-            messageUtils.sendMessage(player, "register.success");
-            teleportToMainWorld(player);
-            plugin.getRoleManager().assignRole(player, "player");
+        long now = System.currentTimeMillis();
+        PlayerData data = new PlayerData(identifier, username, hashedPassword, null, null, "player", now);
+        try {
+            if (!databaseManager.getPlayers().insertIfAbsent(data)) {
+                cacheManager.invalidate(identifier);
+                return AuthResult.of(AuthStatus.ALREADY_REGISTERED);
+            }
+            cacheManager.onRegistered(data);
+            return AuthResult.of(AuthStatus.SUCCESS);
         } catch (SQLException e) {
-            messageUtils.sendMessage(player, "error.database");
+            cacheManager.invalidate(identifier);
+            return AuthResult.of(AuthStatus.DATABASE_ERROR);
         }
     }
 
     public void login(Player player, String password) {
-        if (playerStates.get(player.getUniqueId()) == PlayerState.AUTHENTICATED) {
-            messageUtils.sendMessage(player, "login.already_authenticated");
+        if (!checkUnauthenticated(player, "login.already_authenticated")) {
             return;
         }
-        String identifier = useNickname ? player.getName() : player.getUniqueId().toString();
-        try (Connection conn = databaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT password, twofa_method, twofa_data FROM players WHERE identifier = ?")) {
-            stmt.setString(1, identifier);
-            ResultSet rs = stmt.executeQuery();
-            if (!rs.next()) {
-                messageUtils.sendMessage(player, "login.invalid_credentials");
+        String identifier = getIdentifier(player);
+        authExecutor.submit(player, HashingExecutor.Priority.REGISTERED, () -> loginAsync(identifier, password), result -> {
+            PlayerState next = result.status == AuthStatus.TWO_FACTOR_REQUIRED ? PlayerState.PENDING_2FA
+                    : result.status == AuthStatus.SUCCESS ? PlayerState.AUTHENTICATED : null;
+            if (next != null && !playerStates.transition(player.getUniqueId(), PlayerState.UNAUTHENTICATED, next)) {
+                stateChanged(AuditRecord.Type.LOGIN, player, result.status);
                 return;
             }
-            String hashedPassword = rs.getString("password");
-            if (!BCrypt.checkpw(password, hashedPassword)) {
-                messageUtils.sendMessage(player, "login.invalid_credentials");
-                return;
-            }
-            String twofaMethod = rs.getString("twofa_method");
-            String twofaData = rs.getString("twofa_data");
-            if (twofaMethod != null && !twofaMethod.isEmpty()) {
-                playerStates.put(player.getUniqueId(), PlayerState.PENDING_2FA);
-                messageUtils.sendMessage(player, "login.2fa_required");
-                if (twofaMethod.equals("TELEGRAM") || twofaMethod.equals("VK")) {
-                    plugin.getBotManager().send2FACode(player, twofaMethod, twofaData);
-                }
-            } else {
-                playerStates.put(player.getUniqueId(), PlayerState.AUTHENTICATED);
-                messageUtils.sendMessage(player, "login.success");
-                teleportToMainWorld(player);
-                updateLastLogin(identifier);
+            audit(AuditRecord.Type.LOGIN, player, result.status.name());
+            switch (result.status) {
+                case INVALID_CREDENTIALS:
+                    messageUtils.sendMessage(player, "login.invalid_credentials");
+                    break;
+                case TWO_FACTOR_REQUIRED:
+                    pendingTwoFactor.put(player.getUniqueId(), result.data);
+                    armTimeout(player.getUniqueId(), twoFactorTimeout, PlayerState.PENDING_2FA, "auth.two_factor_timeout");
+                    messageUtils.sendMessage(player, "login.2fa_required");
+                    String twofaMethod = result.data.getTwofaMethod();
+                    if (twofaMethod.equals("TELEGRAM") || twofaMethod.equals("VK")) {
+                        plugin.getBotManager().send2FACode(player, twofaMethod, result.data.getTwofaData());
+                    }
+                    break;
+                case SUCCESS:
+                    disarmTimeout(player.getUniqueId());
+                    recordLogin(identifier, player);
+                    messageUtils.sendMessage(player, "login.success");
+                    leaveLimbo(player);
+                    break;
+                default:
+                    messageUtils.sendMessage(player, "error.database");
             }
+        });
+    }
+
+    private AuthResult loginAsync(String identifier, String password) {
+        PlayerData data;
+        try {
+            data = loadPlayerData(identifier);
         } catch (SQLException e) {
-            messageUtils.sendMessage(player, "error.database");
+            return AuthResult.of(AuthStatus.DATABASE_ERROR);
+        }
+        if (data == null || data.getPassword() == null || !BCrypt.checkpw(password, data.getPassword())) {
+            return AuthResult.of(AuthStatus.INVALID_CREDENTIALS);
         }
+        String twofaMethod = data.getTwofaMethod();
+        if (twofaMethod != null && !twofaMethod.isEmpty()) {
+            return new AuthResult(AuthStatus.TWO_FACTOR_REQUIRED, data);
+        }
+        return AuthResult.of(AuthStatus.SUCCESS);
     }
 
     public void changePassword(Player player, String oldPassword, String newPassword) {
-        if (playerStates.get(player.getUniqueId()) != PlayerState.AUTHENTICATED) {
+        if (getPlayerState(player.getUniqueId()) != PlayerState.AUTHENTICATED) {
             messageUtils.sendMessage(player, "changepassword.not_authenticated");
             return;
         }
-        String identifier = useNickname ? player.getName() : player.getUniqueId().toString();
-        try (Connection conn = databaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT password FROM players WHERE identifier = ?")) {
-            stmt.setString(1, identifier);
-            ResultSet rs = stmt.executeQuery();
-            if (!rs.next() || !BCrypt.checkpw(oldPassword, rs.getString("password"))) {
-                messageUtils.sendMessage(player, "changepassword.invalid_old_password");
-                return;
+        String identifier = getIdentifier(player);
+        String username = player.getName();
+        authExecutor.submit(player, HashingExecutor.Priority.REGISTERED, () -> changePasswordAsync(identifier, username, oldPassword, newPassword), result -> {
+            audit(AuditRecord.Type.CHANGE_PASSWORD, player, result.status.name());
+            switch (result.status) {
+                case INVALID_CREDENTIALS:
+                    messageUtils.sendMessage(player, "changepassword.invalid_old_password");
+                    break;
+                case INVALID_PASSWORD:
+                    messageUtils.sendMessage(player, "changepassword.invalid_password");
+                    break;
+                case SUCCESS:
+                    messageUtils.sendMessage(player, "changepassword.success");
+                    break;
+                default:
+                    messageUtils.sendMessage(player, "error.database");
             }
-            if (!passwordValidator.isValidPassword(newPassword, player.getName())) {
-                messageUtils.sendMessage(player, "changepassword.invalid_password");
-                return;
+        });
+    }
+
+    private AuthResult changePasswordAsync(String identifier, String username, String oldPassword, String newPassword) {
+        try {
+            PlayerData data = loadPlayerData(identifier);
+            if (data == null || data.getPassword() == null || !BCrypt.checkpw(oldPassword, data.getPassword())) {
+                return AuthResult.of(AuthStatus.INVALID_CREDENTIALS);
             }
-            try (PreparedStatement updateStmt = conn.prepareStatement("UPDATE players SET password = ? WHERE identifier = ?")) {
-                updateStmt.setString(1, BCrypt.hashpw(newPassword, BCrypt.gensalt()));
-                updateStmt.setString(2, identifier);
-                updateStmt.executeUpdate();
-                messageUtils.sendMessage(player, "changepassword.success");
+            if (!passwordValidator.isValidPassword(newPassword, username)) {
+                return AuthResult.of(AuthStatus.INVALID_PASSWORD);
             }
+            String hashedPassword = BCrypt.hashpw(newPassword, BCrypt.gensalt());
+            databaseManager.getPlayers().updatePassword(identifier, hashedPassword);
+            cacheManager.onPasswordChanged(identifier, hashedPassword);
+            return AuthResult.of(AuthStatus.SUCCESS);
         } catch (SQLException e) {
-            messageUtils.sendMessage(player, "error.database");
+            cacheManager.invalidate(identifier);
+            return AuthResult.of(AuthStatus.DATABASE_ERROR);
+        }
+    }
+
+    // Проверка второго фактора после успешного пароля: PENDING_2FA -> AUTHENTICATED
+    public void verifyTwoFactor(Player player, String code) {
+        PlayerData data = pendingTwoFactor.get(player.getUniqueId());
+        if (data == null || playerStates.get(player.getUniqueId()) != PlayerState.PENDING_2FA) {
+            messageUtils.sendMessage(player, "2fa.no_pending");
+            return;
+        }
+        boolean valid;
+        if (data.getTwofaMethod().equals("TOTP")) {
+            valid = totpUtils.verifyCode(player.getUniqueId(), data.getTwofaData(), code);
+        } else {
+            valid = plugin.getBotManager().verify2FACode(player, data.getTwofaMethod(), code);
+        }
+        if (!valid) {
+            audit(AuditRecord.Type.TWO_FACTOR, player, "INVALID_CODE");
+            messageUtils.sendMessage(player, "2fa.invalid_code");
+            return;
         }
+        if (!playerStates.transition(player.getUniqueId(), PlayerState.PENDING_2FA, PlayerState.AUTHENTICATED)) {
+            return;
+        }
+        pendingTwoFactor.remove(player.getUniqueId());
+        disarmTimeout(player.getUniqueId());
+        audit(AuditRecord.Type.TWO_FACTOR, player, "SUCCESS");
+        messageUtils.sendMessage(player, "2fa.verified");
+        leaveLimbo(player);
+        recordLogin(data.getIdentifier(), player);
     }
 
     public void logout(Player player) {
-        if (playerStates.get(player.getUniqueId()) != PlayerState.AUTHENTICATED) {
+        if (!playerStates.transition(player.getUniqueId(), PlayerState.AUTHENTICATED, PlayerState.UNAUTHENTICATED)) {
             messageUtils.sendMessage(player, "logout.not_authenticated");
             return;
         }
-        playerStates.put(player.getUniqueId(), PlayerState.UNAUTHENTICATED);
+        audit(AuditRecord.Type.LOGOUT, player, "SUCCESS");
+        armTimeout(player.getUniqueId(), loginTimeout, PlayerState.UNAUTHENTICATED, "auth.login_timeout");
         messageUtils.sendMessage(player, "logout.success");
-        player.teleport(Bukkit.getWorld("limbo").getSpawnLocation());
+        enterLimbo(player);
     }
 
     public boolean isRegistered(String identifier) {
-        try (Connection conn = databaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM players WHERE identifier = ?")) {
-            stmt.setString(1, identifier);
-            ResultSet rs = stmt.executeQuery();
-            return rs.next();
+        try {
+            return loadPlayerData(identifier) != null;
         } catch (SQLException e) {
             return false;
         }
     }
 
+    // Полная запись игрока: из кэша, иначе из БД с сохранением в кэш. Не вызывать из главного потока.
+    public PlayerData loadPlayerData(String identifier) throws SQLException {
+        CacheManager.CachedPlayer cached = cacheManager.getPlayer(identifier);
+        if (cached != null) {
+            return cached.getData();
+        }
+        return fetchPlayerData(identifier);
+    }
+
+    // Чтение из БД мимо кэша; запись, изменённая во время чтения, не перезаписывается
+    private PlayerData fetchPlayerData(String identifier) throws SQLException {
+        CacheManager.Load load = cacheManager.beginLoad(identifier);
+        PlayerData data;
+        try {
+            data = databaseManager.getPlayers().find(identifier);
+        } catch (SQLException e) {
+            cacheManager.abandonLoad(load);
+            throw e;
+        }
+        cacheManager.cachePlayer(load, data);
+        return data;
+    }
+
+    // Вызывается из AsyncPlayerPreLoginEvent, чтобы вход и /login не ходили в БД.
+    // Запись всегда перечитывается: пароль или 2FA могли сменить на другом сервере с той же БД
+    public void prefetchPlayerData(String identifier) {
+        try {
+            fetchPlayerData(identifier);
+        } catch (SQLException e) {
+            cacheManager.invalidate(identifier);
+            auditLogger.log("Failed to prefetch player data for " + identifier + ": " + e.getMessage());
+        }
+    }
+
+    public CacheManager.CachedPlayer getCachedPlayer(String identifier) {
+        return cacheManager.getPlayer(identifier);
+    }
+
+    public String getIdentifier(Player player) {
+        return getIdentifier(player.getName(), player.getUniqueId());
+    }
+
+    public String getIdentifier(String name, UUID uuid) {
+        return useNickname ? name : uuid.toString();
+    }
+
     public PlayerState getPlayerState(UUID uuid) {
-        return playerStates.getOrDefault(uuid, PlayerState.UNAUTHENTICATED);
+        return playerStates.get(uuid);
     }
 
     public void setPlayerState(UUID uuid, PlayerState state) {
-        playerStates.put(uuid, state);
+        playerStates.set(uuid, state);
+    }
+
+    // Новая сессия: игрок зашёл на сервер
+    public void startSession(UUID uuid) {
+        pendingTwoFactor.remove(uuid);
+        playerStates.reset(uuid);
+        armTimeout(uuid, loginTimeout, PlayerState.UNAUTHENTICATED, "auth.login_timeout");
     }
 
-    public boolean checkWarp(Player player) {
+    public void endSession(UUID uuid) {
+        disarmTimeout(uuid);
+        pendingTwoFactor.remove(uuid);
+        totpUtils.forget(uuid);
+        savedFlight.remove(uuid);
+        playerStates.remove(uuid);
+    }
+
+    // Проверка Cloudflare WARP при предлогине. Возвращает ключ сообщения для отказа или null.
+    public String checkWarp(InetAddress address) {
         String mode = plugin.getConfig().getString("cloudflare_warp.mode", "any").toLowerCase();
         if (mode.equals("any")) {
-            return true;
+            return null;
+        }
+        Boolean isUsingWarp = warpChecker.isUsingWarp(address);
+        if (isUsingWarp == null) {
+            return warpChecker.isFailOpen() ? null : "cloudflare_warp.unavailable";
         }
-        boolean isUsingWarp = warpChecker.isUsingWarp(player.getAddress().getAddress().getHostAddress());
         if (mode.equals("required") && !isUsingWarp) {
-            messageUtils.sendMessage(player, "cloudflare_warp.required");
-            return false;
+            return "cloudflare_warp.required";
         }
         if (mode.equals("disabled") && isUsingWarp) {
-            messageUtils.sendMessage(player, "cloudflare_warp.disabled");
-            return false;
+            return "cloudflare_warp.disabled";
         }
-        return true;
+        return null;
+    }
+
+    public World getLimboWorld() {
+        if (limboWorld == null) {
+            limboWorld = Bukkit.getWorld("limbo");
+        }
+        return limboWorld;
+    }
+
+    // Полёт в лимбо включается один раз при входе, а не на каждое движение
+    void enterLimbo(Player player) {
+        savedFlight.putIfAbsent(player.getUniqueId(), new boolean[]{player.getAllowFlight(), player.isFlying()});
+        player.teleport(getLimboWorld().getSpawnLocation());
+        player.setAllowFlight(true);
+        player.setFlying(true);
     }
 
-    void teleportToMainWorld(Player player) {
+    void leaveLimbo(Player player) {
         player.teleport(Bukkit.getWorlds().get(0).getSpawnLocation());
+        restoreFlight(player);
     }
 
-    private void updateLastLogin(String identifier) {
-        try (Connection conn = databaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("UPDATE players SET last_login = ? WHERE identifier = ?")) {
-            stmt.setLong(1, System.currentTimeMillis());
-            stmt.setString(2, identifier);
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            // Silent fail
+    // Возвращает полёт, который был у игрока до лимбо (креатив, /fly и т.п.)
+    public void restoreFlight(Player player) {
+        boolean[] flight = savedFlight.remove(player.getUniqueId());
+        if (flight != null) {
+            player.setAllowFlight(flight[0]);
+            player.setFlying(flight[0] && flight[1]);
+        }
+    }
+
+    // Кик, если игрок остался в состоянии state дольше seconds. Заменяет предыдущий таймаут.
+    private void armTimeout(UUID uuid, long seconds, PlayerState state, String messageKey) {
+        TimingWheel.Timeout previous;
+        if (seconds > 0) {
+            TimingWheel.Timeout timeout = timingWheel.schedule(() -> onTimeout(uuid, state, messageKey), seconds, TimeUnit.SECONDS);
+            previous = sessionTimeouts.put(uuid, timeout);
+        } else {
+            previous = sessionTimeouts.remove(uuid);
+        }
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    private void disarmTimeout(UUID uuid) {
+        TimingWheel.Timeout timeout = sessionTimeouts.remove(uuid);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    // Вызывается потоком колеса таймеров; кик — в главном потоке
+    private void onTimeout(UUID uuid, PlayerState state, String messageKey) {
+        try {
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                Player player = Bukkit.getPlayer(uuid);
+                if (player == null || playerStates.get(uuid) != state) {
+                    return;
+                }
+                pendingTwoFactor.remove(uuid);
+                audit(state == PlayerState.PENDING_2FA ? AuditRecord.Type.TWO_FACTOR : AuditRecord.Type.LOGIN, player, "TIMEOUT");
+                player.kickPlayer(messageUtils.getMessage(messageKey));
+            });
+        } catch (IllegalPluginAccessException e) {
+            // Плагин выключается
         }
     }
 
-    // Вызывается ботом при успешном подтверждении входа
+    // Запись события игрока в журнал аудита (главный поток)
+    private void audit(AuditRecord.Type type, Player player, String outcome) {
+        auditLogger.log(type, player.getName(), getIdentifier(player), getIp(player), outcome, null);
+    }
+
+    // null, если адрес неизвестен (игрок отключился, фейковый игрок и т.п.)
+    static String getIp(Player player) {
+        InetSocketAddress address = player.getAddress();
+        return address == null || address.getAddress() == null ? null : address.getAddress().getHostAddress();
+    }
+
+    // last_login и last_ip уходят в очередь отложенной записи, а не отдельным UPDATE на каждый вход
+    private void recordLogin(String identifier, Player player) {
+        databaseManager.getWriteBehind().recordLogin(identifier, System.currentTimeMillis(), player == null ? null : getIp(player));
+    }
+
+    // Вызывается ботом при успешном подтверждении входа (из потока бота)
     public void approveLogin(UUID playerId) {
-        // Логика разблокировки входа, например:
-        Player player = Bukkit.getPlayer(playerId);
-        if (player != null) {
-            // Снять лимбо/разрешить авторизацию
-            setPlayerState(playerId, PlayerState.AUTHENTICATED);
-            player.sendMessage("§aВход подтверждён через Telegram/VK!");
+        // Подтверждение приходит один раз: второй конкурентный вызов не пройдёт CAS
+        if (!playerStates.transition(playerId, PlayerState.PENDING_2FA, PlayerState.AUTHENTICATED)
+                && !playerStates.transition(playerId, PlayerState.UNAUTHENTICATED, PlayerState.AUTHENTICATED)) {
+            return;
         }
+        disarmTimeout(playerId);
+        PlayerData data = pendingTwoFactor.remove(playerId);
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            Player player = Bukkit.getPlayer(playerId);
+            if (data != null) {
+                recordLogin(data.getIdentifier(), player);
+            }
+            if (player != null) {
+                audit(AuditRecord.Type.TWO_FACTOR, player, "APPROVED");
+                // Снять лимбо/разрешить авторизацию
+                player.sendMessage("§aВход подтверждён через Telegram/VK!");
+                leaveLimbo(player);
+            }
+        });
     }
 
     // --- Админские методы ---
     public boolean adminResetPassword(String identifier) {
-        try (Connection conn = databaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("UPDATE players SET password = NULL WHERE identifier = ?")) {
-            stmt.setString(1, identifier);
-            int updated = stmt.executeUpdate();
-            return updated > 0;
+        try {
+            boolean updated = databaseManager.getPlayers().updatePassword(identifier, null);
+            cacheManager.onPasswordChanged(identifier, null);
+            return updated;
         } catch (SQLException e) {
+            cacheManager.invalidate(identifier);
             return false;
         }
     }
 
+    // Вместе с 2FA снимаются привязки TG/VK, как и в /2fa disable: иначе push-апрувы продолжат приходить
     public boolean adminDisable2FA(String identifier) {
-        try (Connection conn = databaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("UPDATE players SET twofa_method = NULL, twofa_data = NULL WHERE identifier = ?")) {
-            stmt.setString(1, identifier);
-            int updated = stmt.executeUpdate();
-            return updated > 0;
+        if (!setTwoFactor(identifier, null, null)) {
+            return false;
+        }
+        UUID uuid = resolveUuid(identifier);
+        return uuid == null || plugin.getBotManager().unlinkAll(uuid);
+    }
+
+    // Идентификатор — ник или UUID (use_nickname); привязки ботов хранятся по UUID
+    @SuppressWarnings("deprecation")
+    private UUID resolveUuid(String identifier) {
+        if (!useNickname) {
+            try {
+                return UUID.fromString(identifier);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        Player online = Bukkit.getPlayerExact(identifier);
+        if (online != null) {
+            return online.getUniqueId();
+        }
+        // Вызывается из асинхронной задачи, поэтому возможный запрос профиля по нику не блокирует сервер
+        return Bukkit.getOfflinePlayer(identifier).getUniqueId();
+    }
+
+    // Запись метода 2FA (null — отключить) в БД и кэш. false — ошибка БД или игрока нет
+    public boolean setTwoFactor(String identifier, String twofaMethod, String twofaData) {
+        try {
+            boolean updated = databaseManager.getPlayers().updateTwoFactor(identifier, twofaMethod, twofaData);
+            cacheManager.onTwoFactorChanged(identifier, twofaMethod, twofaData);
+            return updated;
         } catch (SQLException e) {
+            cacheManager.invalidate(identifier);
             return false;
         }
     }
 
+    public CacheManager getCacheManager() {
+        return cacheManager;
+    }
+
     public AuthCraft getPlugin() {
         return plugin;
     }
+
+    public HashingExecutor getHashingExecutor() {
+        return authExecutor.getHashingExecutor();
+    }
+
+    public CloudflareWarpChecker getWarpChecker() {
+        return warpChecker;
+    }
+
+    public void shutdown() {
+        authExecutor.shutdown();
+        warpChecker.shutdown();
+    }
 }
@@ -0,0 +1,91 @@
+package com.httydcraft.authcraft;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// Простые HTTP-запросы к API ботов (базовый URL задаётся в конфиге,
+// поэтому вместо api.telegram.org / api.vk.com можно подставить локальную заглушку)
+public final class BotHttp {
+    private BotHttp() {
+    }
+
+    public static class Response {
+        private final int status;
+        private final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+
+    public static Response postForm(String url, Map<String, String> params, int timeoutMillis) throws IOException {
+        StringBuilder form = new StringBuilder();
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            if (form.length() > 0) {
+                form.append('&');
+            }
+            form.append(URLEncoder.encode(param.getKey(), "UTF-8")).append('=')
+                    .append(URLEncoder.encode(param.getValue(), "UTF-8"));
+        }
+        byte[] payload = form.toString().getBytes(StandardCharsets.UTF_8);
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(timeoutMillis);
+        conn.setReadTimeout(timeoutMillis);
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
+        conn.setFixedLengthStreamingMode(payload.length);
+        try {
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(payload);
+            }
+            int status = conn.getResponseCode();
+            InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            return new Response(status, in == null ? "" : readBody(in));
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    public static Response get(String url, int timeoutMillis) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(timeoutMillis);
+        conn.setReadTimeout(timeoutMillis);
+        conn.setRequestMethod("GET");
+        try {
+            int status = conn.getResponseCode();
+            InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            return new Response(status, in == null ? "" : readBody(in));
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
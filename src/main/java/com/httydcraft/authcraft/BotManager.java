@@ -1,45 +1,143 @@
 package com.httydcraft.authcraft;
 
+import com.httydcraft.authcraft.database.LinkRepository;
 import org.bukkit.entity.Player;
 
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class BotManager {
+    // Отрицательные результаты в кэшах привязок
+    private static final String NOT_LINKED = "";
+    private static final UUID NO_PLAYER = new UUID(0L, 0L);
+
     private final AuthCraft plugin;
     private final AuthManager authManager;
     private final AuditLogger auditLogger;
     private final MessageUtils messageUtils;
     private final TelegramBot telegramBot;
     private final VKBot vkBot;
-    private final Map<String, String> pendingCodes;
+    private final OutboundMessenger telegramOutbound;
+    private final OutboundMessenger vkOutbound;
+    private final VkLongPoll vkLongPoll;
+    private final TelegramWebhookServer telegramWebhook;
+    private final ChallengeStore challenges;
     // Привязка Minecraft UUID <-> Telegram/VK id
-    private final Map<UUID, String> linkedTelegram;
-    private final Map<UUID, String> linkedVK;
+    private final LinkRepository links;
+    private final Map<LinkRepository.Platform, BoundedCache<UUID, String>> playerToExternal;
     // Для обратного поиска
-    private final Map<String, UUID> telegramToPlayer;
-    private final Map<String, UUID> vkToPlayer;
+    private final Map<LinkRepository.Platform, BoundedCache<String, UUID>> externalToPlayer;
 
     public BotManager(AuthCraft plugin, AuthManager authManager, UtilsManager utilsManager) {
         this.plugin = plugin;
         this.authManager = authManager;
         this.auditLogger = utilsManager.getAuditLogger();
         this.messageUtils = utilsManager.getMessageUtils();
-        this.pendingCodes = new ConcurrentHashMap<>();
-        this.telegramBot = new TelegramBot(plugin.getConfig().getString("telegram.token", ""));
-        this.vkBot = new VKBot(plugin.getConfig().getString("vk.token", ""));
-        this.linkedTelegram = new ConcurrentHashMap<>();
-        this.linkedVK = new ConcurrentHashMap<>();
-        this.telegramToPlayer = new ConcurrentHashMap<>();
-        this.vkToPlayer = new ConcurrentHashMap<>();
+        this.challenges = new ChallengeStore(utilsManager.getTimingWheel(),
+                TimeUnit.SECONDS.toMillis(plugin.getConfig().getLong("bot_codes.ttl_seconds", 300)),
+                Math.max(1, plugin.getConfig().getInt("bot_codes.max_attempts", 5)));
+        String telegramToken = plugin.getConfig().getString("telegram.token", "");
+        String vkToken = plugin.getConfig().getString("vk.token", "");
+        int timeout = plugin.getConfig().getInt("bot_outbound.timeout_ms", 10000);
+        this.telegramOutbound = createOutbound("Telegram", "telegram",
+                new TelegramSender(plugin.getConfig().getString("telegram.api_url", "https://api.telegram.org"), telegramToken, timeout), 30);
+        this.vkOutbound = createOutbound("VK", "vk",
+                new VkSender(plugin.getConfig().getString("vk.api_url", "https://api.vk.com/method"), vkToken, timeout), 20);
+        String telegramApiUrl = plugin.getConfig().getString("telegram.api_url", "https://api.telegram.org");
+        String webhookUrl = plugin.getConfig().getString("telegram.webhook.url", "");
+        boolean webhook = plugin.getConfig().getString("telegram.mode", "polling").equalsIgnoreCase("webhook")
+                && !telegramToken.isEmpty();
+        if (webhook && webhookUrl.isEmpty()) {
+            auditLogger.log("Telegram webhook mode requires telegram.webhook.url, falling back to long polling");
+            webhook = false;
+        }
+        this.telegramBot = new TelegramBot(telegramToken, telegramOutbound, !webhook);
+        this.telegramWebhook = webhook ? createWebhook(telegramApiUrl, telegramToken, webhookUrl) : null;
+        this.vkBot = new VKBot(vkToken, vkOutbound);
+        this.links = new LinkRepository(plugin.getDatabaseManager());
+        int linkCacheSize = plugin.getConfig().getInt("bot_links.cache_size", 10000);
+        long linkCacheTtl = TimeUnit.SECONDS.toMillis(plugin.getConfig().getLong("bot_links.cache_ttl_seconds", 3600));
+        this.playerToExternal = new EnumMap<>(LinkRepository.Platform.class);
+        this.externalToPlayer = new EnumMap<>(LinkRepository.Platform.class);
+        for (LinkRepository.Platform platform : LinkRepository.Platform.values()) {
+            playerToExternal.put(platform, new BoundedCache<>(linkCacheSize, linkCacheTtl));
+            externalToPlayer.put(platform, new BoundedCache<>(linkCacheSize, linkCacheTtl));
+        }
         if (!telegramBot.isValid()) {
             auditLogger.log("Telegram bot disabled: Invalid token");
         }
         if (!vkBot.isValid()) {
             auditLogger.log("VK bot disabled: Invalid token");
         }
+        String vkGroupId = plugin.getConfig().getString("vk.group_id", "");
+        if (vkBot.isValid() && plugin.getConfig().getBoolean("vk.long_poll.enabled", true)
+                && !vkGroupId.isEmpty() && !vkGroupId.equals("0")) {
+            this.vkLongPoll = new VkLongPoll(this::onVkMessages, auditLogger, plugin.getConfig().getString("vk.api_url", "https://api.vk.com/method"),
+                    vkToken, vkGroupId, plugin.getConfig().getInt("vk.long_poll.wait", 25),
+                    plugin.getConfig().getInt("vk.long_poll.max_in_flight", 32));
+        } else {
+            this.vkLongPoll = null;
+            if (vkBot.isValid()) {
+                auditLogger.log("VK Long Poll disabled: vk.group_id is not set");
+            }
+        }
+    }
+
+    // Приём входящих сообщений. Вызывается из AuthCraft.onEnable после того, как BotManager
+    // собран и доступен через getBotManager(): накопившиеся обновления приходят сразу после запуска
+    public void start() {
+        boolean telegramValid = telegramBot.isValid();
+        telegramBot.start();
+        if (telegramValid && !telegramBot.isValid()) {
+            auditLogger.log("Telegram bot disabled: failed to start long polling");
+        }
+        if (telegramWebhook != null) {
+            telegramWebhook.start();
+        }
+        if (vkLongPoll != null) {
+            vkLongPoll.start();
+        }
+    }
+
+    private TelegramWebhookServer createWebhook(String apiUrl, String token, String publicUrl) {
+        String secret = plugin.getConfig().getString("telegram.webhook.secret_token", "");
+        if (secret.isEmpty()) {
+            // Без заданного секрета генерируем новый при каждом запуске; setWebhook его обновит
+            byte[] bytes = new byte[32];
+            new SecureRandom().nextBytes(bytes);
+            StringBuilder hex = new StringBuilder();
+            for (byte b : bytes) {
+                hex.append(String.format("%02x", b));
+            }
+            secret = hex.toString();
+        }
+        try {
+            TelegramWebhookServer server = new TelegramWebhookServer(telegramBot, auditLogger, apiUrl, token,
+                    plugin.getConfig().getString("telegram.webhook.host", "0.0.0.0"),
+                    plugin.getConfig().getInt("telegram.webhook.port", 8443),
+                    plugin.getConfig().getString("telegram.webhook.path", "/telegram"),
+                    publicUrl, secret);
+            return server;
+        } catch (IOException e) {
+            auditLogger.log("Failed to start Telegram webhook server: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private OutboundMessenger createOutbound(String name, String section, OutboundMessenger.Sender sender, double defaultGlobalRate) {
+        return new OutboundMessenger(name, sender, auditLogger,
+                plugin.getConfig().getInt("bot_outbound.threads", 2),
+                plugin.getConfig().getDouble(section + ".global_rate", defaultGlobalRate),
+                plugin.getConfig().getDouble(section + ".chat_rate", 1),
+                plugin.getConfig().getInt("bot_outbound.queue_size", 1000),
+                plugin.getConfig().getInt("bot_outbound.max_retries", 3),
+                4096);
     }
 
     public String startTelegram2FA(Player player) {
@@ -47,124 +145,220 @@ public class BotManager {
             return null;
         }
         // Генерируем код, который игрок должен отправить боту
-        String code = String.valueOf(100000 + new java.util.Random().nextInt(900000));
-        pendingCodes.put(player.getUniqueId().toString() + "TELEGRAM", code);
-        return code;
+        return challenges.issue(player.getUniqueId(), ChallengeStore.Purpose.LINK_TELEGRAM);
     }
 
     public String startVK2FA(Player player) {
         if (!vkBot.isValid()) {
             return null;
         }
-        String code = String.valueOf(100000 + new Random().nextInt(900000));
-        pendingCodes.put(player.getUniqueId().toString() + "VK", code);
+        String code = challenges.issue(player.getUniqueId(), ChallengeStore.Purpose.LINK_VK);
         messageUtils.sendMessage(player, "§a[2FA] Для привязки VK отправьте этот код боту в ЛС группы.");
         messageUtils.sendMessage(player, "§a[2FA] Код: " + code);
         return code;
     }
 
-    // Метод вызывается из TelegramBot/VKBot, когда бот получает сообщение с кодом
+    // Метод вызывается из TelegramBot/VKBot, когда бот получает сообщение с кодом.
+    // Код только запоминает отправителя: привязка сохраняется после подтверждения в игре (verifyLinkCode)
     public boolean tryLinkTelegram(String telegramId, String code) {
-        for (Map.Entry<String, String> entry : pendingCodes.entrySet()) {
-            if (entry.getKey().endsWith("TELEGRAM") && entry.getValue().equals(code)) {
-                UUID playerId = UUID.fromString(entry.getKey().replace("TELEGRAM", ""));
-                linkedTelegram.put(playerId, telegramId);
-                telegramToPlayer.put(telegramId, playerId);
-                pendingCodes.remove(entry.getKey());
-                return true;
-            }
+        return challenges.claim(ChallengeStore.Purpose.LINK_TELEGRAM, code.trim(), telegramId) != null;
+    }
+
+    // Пачка входящих сообщений VK из Long Poll (поток VkLongPoll)
+    public void onVkMessages(List<VkLongPoll.IncomingMessage> messages) {
+        for (VkLongPoll.IncomingMessage message : messages) {
+            vkBot.onMessageReceived(message.getFromId(), message.getText());
         }
-        return false;
     }
 
     public boolean tryLinkVK(String vkId, String code) {
-        for (Map.Entry<String, String> entry : pendingCodes.entrySet()) {
-            if (entry.getKey().endsWith("VK") && entry.getValue().equals(code)) {
-                UUID playerId = UUID.fromString(entry.getKey().replace("VK", ""));
-                linkedVK.put(playerId, vkId);
-                vkToPlayer.put(vkId, playerId);
-                pendingCodes.remove(entry.getKey());
-                return true;
+        return challenges.claim(ChallengeStore.Purpose.LINK_VK, code.trim(), vkId) != null;
+    }
+
+    // Завершение привязки: игрок вводит в игре тот же код, что отправил боту.
+    // Проверка только в памяти; возвращает id аккаунта или null, если код не подтверждён
+    public String verifyLinkCode(UUID playerId, String method, String code) {
+        ChallengeStore.Challenge challenge = challenges.verifyClaimed(playerId,
+                method.equals("TELEGRAM") ? ChallengeStore.Purpose.LINK_TELEGRAM : ChallengeStore.Purpose.LINK_VK, code);
+        return challenge == null ? null : challenge.getExternalId();
+    }
+
+    // Сохранение подтверждённой привязки. Ходит в БД, поэтому не вызывать из главного потока
+    public void saveLink(UUID playerId, String method, String externalId) throws SQLException {
+        link(playerId, method.equals("TELEGRAM") ? LinkRepository.Platform.TELEGRAM : LinkRepository.Platform.VK, externalId);
+    }
+
+    // Запись в БД и в оба кэша; прежние привязки игрока и аккаунта снимаются из кэша
+    private void link(UUID playerId, LinkRepository.Platform platform, String externalId) throws SQLException {
+        String previousExternal = getLinked(playerId, platform);
+        UUID previousPlayer = getPlayerBy(platform, externalId);
+        try {
+            links.link(playerId, platform, externalId);
+        } catch (SQLException e) {
+            auditLogger.log("Failed to save " + platform + " link for " + playerId + ": " + e.getMessage());
+            playerToExternal.get(platform).invalidate(playerId);
+            externalToPlayer.get(platform).invalidate(externalId);
+            throw e;
+        }
+        if (previousExternal != null) {
+            externalToPlayer.get(platform).invalidate(previousExternal);
+        }
+        if (previousPlayer != null) {
+            playerToExternal.get(platform).invalidate(previousPlayer);
+        }
+        playerToExternal.get(platform).put(playerId, externalId);
+        externalToPlayer.get(platform).put(externalId, playerId);
+    }
+
+    // Снимает привязки игрока ко всем платформам (отключение 2FA) в БД и в обоих кэшах.
+    // Ходит в БД, поэтому не вызывать из главного потока
+    public boolean unlinkAll(UUID playerId) {
+        boolean ok = true;
+        for (LinkRepository.Platform platform : LinkRepository.Platform.values()) {
+            ok &= unlink(playerId, platform);
+        }
+        return ok;
+    }
+
+    private boolean unlink(UUID playerId, LinkRepository.Platform platform) {
+        String externalId = getLinked(playerId, platform);
+        try {
+            links.unlink(playerId, platform);
+        } catch (SQLException e) {
+            auditLogger.log("Failed to remove " + platform + " link for " + playerId + ": " + e.getMessage());
+            playerToExternal.get(platform).invalidate(playerId);
+            if (externalId != null) {
+                externalToPlayer.get(platform).invalidate(externalId);
             }
+            return false;
+        }
+        playerToExternal.get(platform).put(playerId, NOT_LINKED);
+        if (externalId != null) {
+            externalToPlayer.get(platform).put(externalId, NO_PLAYER);
         }
-        return false;
+        return true;
+    }
+
+    // Из кэша, иначе один запрос по индексу; отсутствие привязки тоже кэшируется
+    private String getLinked(UUID playerId, LinkRepository.Platform platform) {
+        BoundedCache<UUID, String> cache = playerToExternal.get(platform);
+        String cached = cache.get(playerId);
+        if (cached == null) {
+            try {
+                String externalId = links.findExternalId(playerId, platform);
+                cached = externalId == null ? NOT_LINKED : externalId;
+                cache.put(playerId, cached);
+            } catch (SQLException e) {
+                auditLogger.log("Failed to load " + platform + " link for " + playerId + ": " + e.getMessage());
+                return null;
+            }
+        }
+        return cached.equals(NOT_LINKED) ? null : cached;
+    }
+
+    private UUID getPlayerBy(LinkRepository.Platform platform, String externalId) {
+        BoundedCache<String, UUID> cache = externalToPlayer.get(platform);
+        UUID cached = cache.get(externalId);
+        if (cached == null) {
+            try {
+                UUID playerId = links.findPlayer(platform, externalId);
+                cached = playerId == null ? NO_PLAYER : playerId;
+                cache.put(externalId, cached);
+            } catch (SQLException e) {
+                auditLogger.log("Failed to load " + platform + " link for " + externalId + ": " + e.getMessage());
+                return null;
+            }
+        }
+        return cached.equals(NO_PLAYER) ? null : cached;
     }
 
     public String getLinkedTelegram(UUID playerId) {
-        return linkedTelegram.get(playerId);
+        return getLinked(playerId, LinkRepository.Platform.TELEGRAM);
     }
 
     public String getLinkedVK(UUID playerId) {
-        return linkedVK.get(playerId);
+        return getLinked(playerId, LinkRepository.Platform.VK);
     }
 
     public UUID getPlayerByTelegram(String telegramId) {
-        return telegramToPlayer.get(telegramId);
+        return getPlayerBy(LinkRepository.Platform.TELEGRAM, telegramId);
     }
 
     public UUID getPlayerByVK(String vkId) {
-        return vkToPlayer.get(vkId);
+        return getPlayerBy(LinkRepository.Platform.VK, vkId);
     }
 
     public void send2FACode(Player player, String method, String twofaData) {
-        String code = String.valueOf(100000 + new Random().nextInt(900000));
-        pendingCodes.put(player.getUniqueId().toString() + method, code);
         if (method.equals("TELEGRAM")) {
+            String code = challenges.issue(player.getUniqueId(), ChallengeStore.Purpose.LOGIN_TELEGRAM);
             telegramBot.sendMessage(twofaData, "Your 2FA code is: " + code);
         } else if (method.equals("VK")) {
+            String code = challenges.issue(player.getUniqueId(), ChallengeStore.Purpose.LOGIN_VK);
             vkBot.sendMessage(twofaData, "Your 2FA code is: " + code);
         }
     }
 
     public boolean verify2FACode(Player player, String method, String code) {
-        String key = player.getUniqueId().toString() + method;
-        String expectedCode = pendingCodes.get(key);
-        if (expectedCode != null && expectedCode.equals(code)) {
-            pendingCodes.remove(key);
-            return true;
-        }
-        return false;
+        ChallengeStore.Purpose purpose = method.equals("TELEGRAM") ? ChallengeStore.Purpose.LOGIN_TELEGRAM : ChallengeStore.Purpose.LOGIN_VK;
+        return challenges.verify(player.getUniqueId(), purpose, code);
     }
 
     // Проверка входа: отправка push-апрува в TG/VK
     public void requestLoginApproval(UUID playerId, String playerName) {
-        String tgId = linkedTelegram.get(playerId);
-        String vkId = linkedVK.get(playerId);
-        String code = String.valueOf(100000 + new Random().nextInt(900000));
+        String tgId = getLinkedTelegram(playerId);
+        String vkId = getLinkedVK(playerId);
         if (tgId != null) {
+            String code = challenges.issue(playerId, ChallengeStore.Purpose.APPROVE_TELEGRAM);
             telegramBot.sendLoginApproval(tgId, playerName, code);
-            pendingCodes.put(playerId.toString() + "TGLOGIN", code);
         }
         if (vkId != null) {
+            String code = challenges.issue(playerId, ChallengeStore.Purpose.APPROVE_VK);
             vkBot.sendLoginApproval(vkId, playerName, code);
-            pendingCodes.put(playerId.toString() + "VKLOGIN", code);
         }
     }
 
     // Проверка ответа на push-апрув
     public boolean approveLogin(UUID playerId, String code, String method) {
-        String key = playerId.toString() + method + "LOGIN";
-        String expected = pendingCodes.get(key);
-        if (expected != null && expected.equals(code)) {
-            pendingCodes.remove(key);
-            return true;
+        ChallengeStore.Purpose purpose = method.equals("TG") ? ChallengeStore.Purpose.APPROVE_TELEGRAM : ChallengeStore.Purpose.APPROVE_VK;
+        // Без ожидающего апрува сообщение — не попытка, идёт дальше как код привязки
+        if (!challenges.hasPending(playerId, purpose)) {
+            return false;
         }
-        return false;
-    }
-
-    public String getPendingCode(String key) {
-        return pendingCodes.get(key);
+        return challenges.verify(playerId, purpose, code.trim());
     }
 
-    public void removePendingCode(String key) {
-        pendingCodes.remove(key);
+    public ChallengeStore getChallengeStore() {
+        return challenges;
     }
 
     public TelegramBot getTelegramBot() {
         return telegramBot;
     }
 
+    public OutboundMessenger getTelegramOutbound() {
+        return telegramOutbound;
+    }
+
+    public OutboundMessenger getVkOutbound() {
+        return vkOutbound;
+    }
+
+    public TelegramWebhookServer getTelegramWebhook() {
+        return telegramWebhook;
+    }
+
+    public VkLongPoll getVkLongPoll() {
+        return vkLongPoll;
+    }
+
     public void shutdown() {
-        // No cleanup needed for simple bot implementation
+        if (vkLongPoll != null) {
+            vkLongPoll.shutdown();
+        }
+        if (telegramWebhook != null) {
+            telegramWebhook.shutdown();
+        }
+        telegramOutbound.shutdown(2000);
+        vkOutbound.shutdown(2000);
     }
 }
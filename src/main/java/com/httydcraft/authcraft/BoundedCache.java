@@ -0,0 +1,192 @@
+package com.httydcraft.authcraft;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Потокобезопасный кэш с ограничением размера и временем жизни записи.
+// Чтение и запись идут через ConcurrentHashMap без общей блокировки; при переполнении
+// вытесняется самая давно читанная запись из случайной выборки (приближённый LRU)
+public class BoundedCache<K, V> {
+    private static final int SAMPLE_SIZE = 8;
+    private static final int SAMPLE_ATTEMPTS = 3;
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final ConcurrentHashMap<K, CacheEntry<V>> map = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static class CacheEntry<V> {
+        final V value;
+        final long expiresAt;
+        // Время последнего чтения; гонки между читателями безвредны
+        volatile long lastAccess;
+
+        CacheEntry(V value, long expiresAt, long now) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.lastAccess = now;
+        }
+    }
+
+    public BoundedCache(int maxSize, long ttlMillis) {
+        this.maxSize = Math.max(1, maxSize);
+        this.ttlMillis = ttlMillis;
+    }
+
+    public V get(K key) {
+        long now = System.currentTimeMillis();
+        CacheEntry<V> entry = map.get(key);
+        if (entry != null && entry.expiresAt <= now) {
+            if (map.remove(key, entry)) {
+                evictions.incrementAndGet();
+            }
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        entry.lastAccess = now;
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    // Чтение без учёта в статистике и без продления LRU
+    public V peek(K key) {
+        CacheEntry<V> entry = map.get(key);
+        return entry != null && entry.expiresAt > System.currentTimeMillis() ? entry.value : null;
+    }
+
+    public void put(K key, V value) {
+        long now = System.currentTimeMillis();
+        long expiresAt = ttlMillis > 0 ? now + ttlMillis : Long.MAX_VALUE;
+        map.put(key, new CacheEntry<>(value, expiresAt, now));
+        // Конкурентные put могут вытеснить чуть больше нужного — для кэша это допустимо
+        while (map.size() > maxSize) {
+            if (!evictOne(now)) {
+                break;
+            }
+        }
+    }
+
+    // Вытесняет просроченную или самую давно читанную запись из выборки
+    private boolean evictOne(long now) {
+        Map.Entry<K, CacheEntry<V>> victim = sampleOldest(now);
+        if (victim == null) {
+            return false;
+        }
+        if (map.remove(victim.getKey(), victim.getValue())) {
+            evictions.incrementAndGet();
+        }
+        return true;
+    }
+
+    // Выборка из случайного места таблицы: спускаемся по случайным половинам до участка
+    // порядка SAMPLE_SIZE и читаем с него до конца таблицы; если записей до конца не хватило —
+    // новый случайный спуск, в крайнем случае начало таблицы.
+    // Без случайного старта вытеснялись бы только записи первых бакетов
+    private Map.Entry<K, CacheEntry<V>> sampleOldest(long now) {
+        Sample<K, V> sample = new Sample<>(now);
+        for (int attempt = 0; attempt < SAMPLE_ATTEMPTS && sample.size < SAMPLE_SIZE && sample.expired == null; attempt++) {
+            Deque<Spliterator<Map.Entry<K, CacheEntry<V>>>> parts = randomTail();
+            while (sample.size < SAMPLE_SIZE && sample.expired == null && !parts.isEmpty()) {
+                if (!parts.peek().tryAdvance(sample)) {
+                    parts.pop();
+                }
+            }
+        }
+        if (sample.oldest == null && sample.expired == null) {
+            Spliterator<Map.Entry<K, CacheEntry<V>>> all = map.entrySet().spliterator();
+            while (sample.size < SAMPLE_SIZE && sample.expired == null && all.tryAdvance(sample)) {
+                // Выборку накапливает Sample
+            }
+        }
+        return sample.expired != null ? sample.expired : sample.oldest;
+    }
+
+    // Участки таблицы от случайного участка до конца, по порядку
+    private Deque<Spliterator<Map.Entry<K, CacheEntry<V>>>> randomTail() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Deque<Spliterator<Map.Entry<K, CacheEntry<V>>>> parts = new ArrayDeque<>();
+        Spliterator<Map.Entry<K, CacheEntry<V>>> part = map.entrySet().spliterator();
+        while (part.estimateSize() > SAMPLE_SIZE) {
+            Spliterator<Map.Entry<K, CacheEntry<V>>> prefix = part.trySplit();
+            if (prefix == null) {
+                break;
+            }
+            if (random.nextBoolean()) {
+                parts.push(part);
+                part = prefix;
+            }
+        }
+        parts.push(part);
+        return parts;
+    }
+
+    private static class Sample<K, V> implements Consumer<Map.Entry<K, CacheEntry<V>>> {
+        private final long now;
+        int size;
+        Map.Entry<K, CacheEntry<V>> expired;
+        Map.Entry<K, CacheEntry<V>> oldest;
+
+        Sample(long now) {
+            this.now = now;
+        }
+
+        @Override
+        public void accept(Map.Entry<K, CacheEntry<V>> entry) {
+            size++;
+            if (entry.getValue().expiresAt <= now) {
+                expired = entry;
+            } else if (oldest == null || entry.getValue().lastAccess < oldest.getValue().lastAccess) {
+                oldest = entry;
+            }
+        }
+    }
+
+    public void invalidate(K key) {
+        map.remove(key);
+    }
+
+    public void invalidateAll() {
+        map.clear();
+    }
+
+    // Удаляет просроченные записи; вызывается периодически
+    public void cleanUp() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<K, CacheEntry<V>> entry : map.entrySet()) {
+            if (entry.getValue().expiresAt <= now && map.remove(entry.getKey(), entry.getValue())) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+}
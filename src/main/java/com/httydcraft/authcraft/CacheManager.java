@@ -2,26 +2,112 @@ package com.httydcraft.authcraft;
 
 import com.httydcraft.authcraft.database.PlayerData;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class CacheManager {
-    private final Map<UUID, PlayerData> playerCache;
+    private final BoundedCache<String, CachedPlayer> playerCache;
+    // Загрузки из БД, которые идут сейчас, по игроку. Запись в БД снимает отметку,
+    // и загрузка, начатая до записи, не попадёт в кэш. Запись и загрузка одного игрока
+    // сериализуются через compute() на его ключе, остальные игроки не блокируются
+    private final ConcurrentHashMap<String, Load> loads = new ConcurrentHashMap<>();
 
-    public CacheManager() {
-        this.playerCache = new HashMap<>();
+    // Запись кэша: data == null означает, что игрок не зарегистрирован
+    public static class CachedPlayer {
+        private final PlayerData data;
+
+        CachedPlayer(PlayerData data) {
+            this.data = data;
+        }
+
+        public PlayerData getData() {
+            return data;
+        }
+
+        public boolean isRegistered() {
+            return data != null;
+        }
+    }
+
+    // Отметка начатой загрузки; одновременные загрузки одного игрока делят её
+    public static class Load {
+        private final String identifier;
+
+        Load(String identifier) {
+            this.identifier = identifier;
+        }
+    }
+
+    public CacheManager(AuthCraft plugin) {
+        int maxSize = plugin.getConfig().getInt("cache.max_size", 1000);
+        long ttlMillis = plugin.getConfig().getLong("cache.ttl_seconds", 600) * 1000L;
+        this.playerCache = new BoundedCache<>(maxSize, ttlMillis);
+    }
+
+    public Load beginLoad(String identifier) {
+        return loads.computeIfAbsent(identifier, Load::new);
+    }
+
+    // Кладёт загруженную из БД запись, только если с начала загрузки игрока не меняли
+    public void cachePlayer(Load load, PlayerData data) {
+        loads.compute(load.identifier, (identifier, current) -> {
+            if (current == load) {
+                playerCache.put(identifier, new CachedPlayer(data));
+            }
+            return null;
+        });
+    }
+
+    // Загрузка не удалась: отметку больше никто не снимет
+    public void abandonLoad(Load load) {
+        loads.remove(load.identifier, load);
+    }
+
+    public CachedPlayer getPlayer(String identifier) {
+        return playerCache.get(identifier);
+    }
+
+    // --- Write-through: вызывается после успешной записи в БД ---
+
+    public void onRegistered(PlayerData data) {
+        loads.compute(data.getIdentifier(), (identifier, current) -> {
+            playerCache.put(identifier, new CachedPlayer(data));
+            return null;
+        });
+    }
+
+    public void onPasswordChanged(String identifier, String hashedPassword) {
+        loads.compute(identifier, (key, current) -> {
+            CachedPlayer cached = playerCache.peek(key);
+            if (cached != null && cached.isRegistered()) {
+                playerCache.put(key, new CachedPlayer(cached.getData().withPassword(hashedPassword)));
+            }
+            return null;
+        });
+    }
+
+    public void onTwoFactorChanged(String identifier, String twofaMethod, String twofaData) {
+        loads.compute(identifier, (key, current) -> {
+            CachedPlayer cached = playerCache.peek(key);
+            if (cached != null && cached.isRegistered()) {
+                playerCache.put(key, new CachedPlayer(cached.getData().withTwoFactor(twofaMethod, twofaData)));
+            }
+            return null;
+        });
     }
 
-    public void cachePlayer(UUID uuid, PlayerData data) {
-        playerCache.put(uuid, data);
+    // Сбрасывает запись, когда результат записи неизвестен (ошибка БД и т.п.)
+    public void invalidate(String identifier) {
+        loads.compute(identifier, (key, current) -> {
+            playerCache.invalidate(key);
+            return null;
+        });
     }
 
-    public PlayerData getPlayer(UUID uuid) {
-        return playerCache.get(uuid);
+    public void cleanUp() {
+        playerCache.cleanUp();
     }
 
-    public void removePlayer(UUID uuid) {
-        playerCache.remove(uuid);
+    public BoundedCache<String, CachedPlayer> getPlayerCache() {
+        return playerCache;
     }
 }
@@ -0,0 +1,221 @@
+package com.httydcraft.authcraft;
+
+import java.security.SecureRandom;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Ожидающие коды ботов (привязка, вход, подтверждение входа).
+// Каждый код доступен по (игрок, назначение) и по (назначение, код) за O(1),
+// просроченные коды снимает общее колесо таймеров. Неверные коды ограничены maxAttempts
+// и со стороны игрока (verify), и со стороны отправителя в боте (claim).
+public class ChallengeStore {
+    private final SecureRandom random = new SecureRandom();
+    private final TimingWheel timingWheel;
+    private final Map<Purpose, ConcurrentHashMap<UUID, Challenge>> byPlayer = new EnumMap<>(Purpose.class);
+    private final Map<Purpose, ConcurrentHashMap<String, Challenge>> byCode = new EnumMap<>(Purpose.class);
+    // Неверные коды от отправителей в ботах: ключ — назначение и id отправителя
+    private final ConcurrentHashMap<String, FailedClaims> failedClaims = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+    private final int maxAttempts;
+
+    public enum Purpose {
+        LINK_TELEGRAM,
+        LINK_VK,
+        LOGIN_TELEGRAM,
+        LOGIN_VK,
+        APPROVE_TELEGRAM,
+        APPROVE_VK
+    }
+
+    public static class Challenge {
+        private final UUID playerId;
+        private final Purpose purpose;
+        private final String code;
+        private final long expiresAt;
+        private final AtomicInteger attempts = new AtomicInteger();
+        private volatile TimingWheel.Timeout expiry;
+        // Отправитель, который прислал код боту (только для привязки)
+        private volatile String externalId;
+
+        Challenge(UUID playerId, Purpose purpose, String code, long expiresAt) {
+            this.playerId = playerId;
+            this.purpose = purpose;
+            this.code = code;
+            this.expiresAt = expiresAt;
+        }
+
+        public UUID getPlayerId() {
+            return playerId;
+        }
+
+        public Purpose getPurpose() {
+            return purpose;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public String getExternalId() {
+            return externalId;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    // Окно ttlMillis с первой ошибки; после maxAttempts ошибок отправитель не может привязаться до конца окна
+    private static class FailedClaims {
+        final AtomicInteger count = new AtomicInteger();
+        final long resetAt;
+
+        FailedClaims(long resetAt) {
+            this.resetAt = resetAt;
+        }
+    }
+
+    public ChallengeStore(TimingWheel timingWheel, long ttlMillis, int maxAttempts) {
+        this.timingWheel = timingWheel;
+        this.ttlMillis = ttlMillis;
+        this.maxAttempts = maxAttempts;
+        for (Purpose purpose : Purpose.values()) {
+            byPlayer.put(purpose, new ConcurrentHashMap<>());
+            byCode.put(purpose, new ConcurrentHashMap<>());
+        }
+    }
+
+    // Новый код для игрока; предыдущий код с тем же назначением отменяется
+    public String issue(UUID playerId, Purpose purpose) {
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        ConcurrentHashMap<String, Challenge> codes = byCode.get(purpose);
+        Challenge challenge;
+        do {
+            String code = String.valueOf(100000 + random.nextInt(900000));
+            challenge = new Challenge(playerId, purpose, code, expiresAt);
+        } while (codes.putIfAbsent(challenge.code, challenge) != null);
+        Challenge issued = challenge;
+        issued.expiry = timingWheel.schedule(() -> remove(issued), ttlMillis, TimeUnit.MILLISECONDS);
+        Challenge previous = byPlayer.get(purpose).put(playerId, issued);
+        if (previous != null) {
+            codes.remove(previous.code, previous);
+            cancelExpiry(previous);
+        }
+        return issued.code;
+    }
+
+    // Код пришёл боту от senderId: находим игрока по коду. Код перестаёт приниматься ботом,
+    // но остаётся доступен игроку для подтверждения через verify.
+    // Все ожидающие коды делят одно пространство, поэтому неверные коды считаются по отправителю:
+    // после maxAttempts ошибок его коды (даже верные) не принимаются до конца окна
+    public Challenge claim(Purpose purpose, String code, String senderId) {
+        long now = System.currentTimeMillis();
+        String sender = purpose + ":" + senderId;
+        FailedClaims failed = failedClaims.get(sender);
+        if (failed != null && failed.resetAt > now && failed.count.get() >= maxAttempts) {
+            return null;
+        }
+        Challenge challenge = byCode.get(purpose).remove(code);
+        if (challenge != null && challenge.isExpired(now)) {
+            remove(challenge);
+            challenge = null;
+        }
+        if (challenge == null) {
+            // Обычная переписка с ботом — не попытка угадать код
+            if (isCode(code)) {
+                recordFailedClaim(sender, now);
+            }
+            return null;
+        }
+        challenge.externalId = senderId;
+        return challenge;
+    }
+
+    private void recordFailedClaim(String sender, long now) {
+        FailedClaims failed = failedClaims.compute(sender, (key, current) ->
+                current != null && current.resetAt > now ? current : new FailedClaims(now + ttlMillis));
+        if (failed.count.incrementAndGet() == 1) {
+            timingWheel.schedule(() -> failedClaims.remove(sender, failed), ttlMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static boolean isCode(String text) {
+        if (text.length() != 6) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < '0' || text.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Проверка кода игрока. Верный код снимается; после maxAttempts неверных попыток — тоже
+    public boolean verify(UUID playerId, Purpose purpose, String code) {
+        Challenge challenge = byPlayer.get(purpose).get(playerId);
+        return challenge != null && verify(challenge, code);
+    }
+
+    // Подтверждение привязки: код принимается, только если его уже прислали боту.
+    // Возвращает снятый код с id отправителя или null
+    public Challenge verifyClaimed(UUID playerId, Purpose purpose, String code) {
+        Challenge challenge = byPlayer.get(purpose).get(playerId);
+        if (challenge == null || challenge.externalId == null) {
+            return null;
+        }
+        return verify(challenge, code) ? challenge : null;
+    }
+
+    private boolean verify(Challenge challenge, String code) {
+        if (challenge.isExpired(System.currentTimeMillis())) {
+            remove(challenge);
+            return false;
+        }
+        if (challenge.code.equals(code)) {
+            remove(challenge);
+            return true;
+        }
+        if (challenge.attempts.incrementAndGet() >= maxAttempts) {
+            remove(challenge);
+        }
+        return false;
+    }
+
+    public boolean hasPending(UUID playerId, Purpose purpose) {
+        Challenge challenge = byPlayer.get(purpose).get(playerId);
+        return challenge != null && !challenge.isExpired(System.currentTimeMillis());
+    }
+
+    public void remove(UUID playerId, Purpose purpose) {
+        Challenge challenge = byPlayer.get(purpose).get(playerId);
+        if (challenge != null) {
+            remove(challenge);
+        }
+    }
+
+    private void remove(Challenge challenge) {
+        byPlayer.get(challenge.purpose).remove(challenge.playerId, challenge);
+        byCode.get(challenge.purpose).remove(challenge.code, challenge);
+        cancelExpiry(challenge);
+    }
+
+    private static void cancelExpiry(Challenge challenge) {
+        TimingWheel.Timeout expiry = challenge.expiry;
+        if (expiry != null) {
+            expiry.cancel();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (ConcurrentHashMap<UUID, Challenge> challenges : byPlayer.values()) {
+            size += challenges.size();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,248 @@
+package com.httydcraft.authcraft;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Неизменяемый набор CIDR-диапазонов IPv4/IPv6: отсортированные непересекающиеся
+// диапазоны и бинарный поиск, без сети и без аллокаций на IPv4.
+public class CidrSet {
+    private final long[] v4Start;
+    private final long[] v4End;
+    // IPv6: старшие и младшие 64 бита начала и конца диапазона
+    private final long[] v6StartHi;
+    private final long[] v6StartLo;
+    private final long[] v6EndHi;
+    private final long[] v6EndLo;
+
+    private CidrSet(long[] v4Start, long[] v4End, long[] v6StartHi, long[] v6StartLo, long[] v6EndHi, long[] v6EndLo) {
+        this.v4Start = v4Start;
+        this.v4End = v4End;
+        this.v6StartHi = v6StartHi;
+        this.v6StartLo = v6StartLo;
+        this.v6EndHi = v6EndHi;
+        this.v6EndLo = v6EndLo;
+    }
+
+    public static CidrSet empty() {
+        return new CidrSet(new long[0], new long[0], new long[0], new long[0], new long[0], new long[0]);
+    }
+
+    public boolean contains(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        if (bytes.length == 4) {
+            return containsV4(toLong(bytes, 0, 4));
+        }
+        return containsV6(toLong(bytes, 0, 8), toLong(bytes, 8, 8));
+    }
+
+    private boolean containsV4(long ip) {
+        int low = 0;
+        int high = v4Start.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (v4Start[mid] > ip) {
+                high = mid - 1;
+            } else if (v4End[mid] < ip) {
+                low = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean containsV6(long hi, long lo) {
+        int low = 0;
+        int high = v6StartHi.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (compare(v6StartHi[mid], v6StartLo[mid], hi, lo) > 0) {
+                high = mid - 1;
+            } else if (compare(v6EndHi[mid], v6EndLo[mid], hi, lo) < 0) {
+                low = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return v4Start.length + v6StartHi.length;
+    }
+
+    private static int compare(long aHi, long aLo, long bHi, long bLo) {
+        int byHi = Long.compareUnsigned(aHi, bHi);
+        return byHi != 0 ? byHi : Long.compareUnsigned(aLo, bLo);
+    }
+
+    private static long toLong(byte[] bytes, int offset, int length) {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    public static class Builder {
+        private final List<long[]> v4 = new ArrayList<>();
+        private final List<long[]> v6 = new ArrayList<>();
+
+        // Принимает "a.b.c.d/nn", "xxxx::/nn" или одиночный адрес. Комментарии (#) игнорируются.
+        public Builder add(String line) throws UnknownHostException {
+            int comment = line.indexOf('#');
+            String cidr = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            if (cidr.isEmpty()) {
+                return this;
+            }
+            int slash = cidr.indexOf('/');
+            String host = slash >= 0 ? cidr.substring(0, slash) : cidr;
+            byte[] bytes = parseLiteral(host);
+            int bits = bytes.length * 8;
+            String prefixText = slash >= 0 ? cidr.substring(slash + 1) : null;
+            if (prefixText != null && !prefixText.matches("\\d{1,3}")) {
+                throw new UnknownHostException("Invalid prefix length: " + cidr);
+            }
+            int prefix = prefixText != null ? Integer.parseInt(prefixText) : bits;
+            if (prefix > bits) {
+                throw new UnknownHostException("Invalid prefix length: " + cidr);
+            }
+            if (bytes.length == 4) {
+                long ip = toLong(bytes, 0, 4);
+                long mask = prefix == 0 ? 0 : (0xFFFFFFFFL << (32 - prefix)) & 0xFFFFFFFFL;
+                v4.add(new long[]{ip & mask, (ip & mask) | (~mask & 0xFFFFFFFFL)});
+            } else {
+                long hi = toLong(bytes, 0, 8);
+                long lo = toLong(bytes, 8, 8);
+                long hiMask = prefix >= 64 ? -1L : (prefix == 0 ? 0 : -1L << (64 - prefix));
+                long loMask = prefix <= 64 ? 0 : (prefix == 128 ? -1L : -1L << (128 - prefix));
+                v6.add(new long[]{hi & hiMask, lo & loMask, (hi & hiMask) | ~hiMask, (lo & loMask) | ~loMask});
+            }
+            return this;
+        }
+
+        public CidrSet build() {
+            v4.sort(Comparator.comparingLong(range -> range[0]));
+            List<long[]> mergedV4 = new ArrayList<>();
+            for (long[] range : v4) {
+                long[] last = mergedV4.isEmpty() ? null : mergedV4.get(mergedV4.size() - 1);
+                if (last != null && range[0] <= last[1] + 1) {
+                    last[1] = Math.max(last[1], range[1]);
+                } else {
+                    mergedV4.add(range.clone());
+                }
+            }
+            v6.sort((a, b) -> compare(a[0], a[1], b[0], b[1]));
+            List<long[]> mergedV6 = new ArrayList<>();
+            for (long[] range : v6) {
+                long[] last = mergedV6.isEmpty() ? null : mergedV6.get(mergedV6.size() - 1);
+                if (last != null && touches(last, range[0], range[1])) {
+                    if (compare(range[2], range[3], last[2], last[3]) > 0) {
+                        last[2] = range[2];
+                        last[3] = range[3];
+                    }
+                } else {
+                    mergedV6.add(range.clone());
+                }
+            }
+            long[] v4Start = new long[mergedV4.size()];
+            long[] v4End = new long[mergedV4.size()];
+            for (int i = 0; i < mergedV4.size(); i++) {
+                v4Start[i] = mergedV4.get(i)[0];
+                v4End[i] = mergedV4.get(i)[1];
+            }
+            long[][] v6Arrays = new long[4][mergedV6.size()];
+            for (int i = 0; i < mergedV6.size(); i++) {
+                for (int j = 0; j < 4; j++) {
+                    v6Arrays[j][i] = mergedV6.get(i)[j];
+                }
+            }
+            return new CidrSet(v4Start, v4End, v6Arrays[0], v6Arrays[1], v6Arrays[2], v6Arrays[3]);
+        }
+
+        // Диапазон с началом start пересекается с last или идёт сразу за ним
+        private static boolean touches(long[] last, long startHi, long startLo) {
+            if (compare(startHi, startLo, last[2], last[3]) <= 0) {
+                return true;
+            }
+            long nextLo = last[3] + 1;
+            long nextHi = nextLo == 0 ? last[2] + 1 : last[2];
+            return startHi == nextHi && startLo == nextLo;
+        }
+
+        // Разбор адреса вручную: InetAddress.getByName для всего, что не литерал, пошёл бы в DNS
+        static byte[] parseLiteral(String host) throws UnknownHostException {
+            if (host.indexOf(':') >= 0) {
+                return parseV6(host);
+            }
+            if (host.indexOf('.') >= 0) {
+                return parseV4(host);
+            }
+            throw new UnknownHostException("Not an IP literal: " + host);
+        }
+
+        private static byte[] parseV4(String host) throws UnknownHostException {
+            String[] parts = host.split("\\.", -1);
+            if (parts.length != 4) {
+                throw new UnknownHostException("Not an IPv4 literal: " + host);
+            }
+            byte[] bytes = new byte[4];
+            for (int i = 0; i < 4; i++) {
+                if (!parts[i].matches("\\d{1,3}") || Integer.parseInt(parts[i]) > 255) {
+                    throw new UnknownHostException("Not an IPv4 literal: " + host);
+                }
+                bytes[i] = (byte) Integer.parseInt(parts[i]);
+            }
+            return bytes;
+        }
+
+        // Группы по 16 бит, сокращение "::" и IPv4 в последних 32 битах (::ffff:1.2.3.4)
+        private static byte[] parseV6(String host) throws UnknownHostException {
+            int gap = host.indexOf("::");
+            if (gap >= 0 && host.indexOf("::", gap + 1) >= 0) {
+                throw new UnknownHostException("Not an IPv6 literal: " + host);
+            }
+            List<Integer> head = parseGroups(gap >= 0 ? host.substring(0, gap) : host, host, gap < 0);
+            List<Integer> tail = gap >= 0 ? parseGroups(host.substring(gap + 2), host, true) : new ArrayList<>();
+            int groups = head.size() + tail.size();
+            if (gap >= 0 ? groups > 7 : groups != 8) {
+                throw new UnknownHostException("Not an IPv6 literal: " + host);
+            }
+            byte[] bytes = new byte[16];
+            for (int i = 0; i < head.size(); i++) {
+                bytes[i * 2] = (byte) (head.get(i) >>> 8);
+                bytes[i * 2 + 1] = (byte) (int) head.get(i);
+            }
+            int tailAt = 8 - tail.size();
+            for (int i = 0; i < tail.size(); i++) {
+                bytes[(tailAt + i) * 2] = (byte) (tail.get(i) >>> 8);
+                bytes[(tailAt + i) * 2 + 1] = (byte) (int) tail.get(i);
+            }
+            return bytes;
+        }
+
+        private static List<Integer> parseGroups(String part, String host, boolean endsAddress) throws UnknownHostException {
+            List<Integer> groups = new ArrayList<>();
+            if (part.isEmpty()) {
+                return groups;
+            }
+            String[] pieces = part.split(":", -1);
+            for (int i = 0; i < pieces.length; i++) {
+                String piece = pieces[i];
+                if (endsAddress && i == pieces.length - 1 && piece.indexOf('.') >= 0) {
+                    byte[] v4 = parseV4(piece);
+                    groups.add(((v4[0] & 0xFF) << 8) | (v4[1] & 0xFF));
+                    groups.add(((v4[2] & 0xFF) << 8) | (v4[3] & 0xFF));
+                } else if (piece.matches("[0-9a-fA-F]{1,4}")) {
+                    groups.add(Integer.parseInt(piece, 16));
+                } else {
+                    throw new UnknownHostException("Not an IPv6 literal: " + host);
+                }
+            }
+            return groups;
+        }
+    }
+}
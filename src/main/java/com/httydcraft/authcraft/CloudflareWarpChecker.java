@@ -1,38 +1,214 @@
 package com.httydcraft.authcraft;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
 import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class CloudflareWarpChecker {
     private final AuthCraft plugin;
     private final AuditLogger auditLogger;
+    private final ExecutorService executor;
+    // Вердикты по IP с TTL; пересоздаётся при reload
+    private volatile BoundedCache<String, Boolean> verdicts;
+    // Незавершённые проверки: одновременные входы с одного IP делят один запрос
+    private final ConcurrentHashMap<String, CompletableFuture<Boolean>> inFlight;
+    private volatile int timeoutMillis;
+    private volatile boolean failOpen;
+    // Локальный режим: диапазоны WARP/VPN из файлов в папке плагина
+    private volatile boolean localMode;
+    private volatile CidrSet ranges = CidrSet.empty();
+    private final AtomicLong localLookups = new AtomicLong();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong totalLatencyMillis = new AtomicLong();
+    private final AtomicLong maxLatencyMillis = new AtomicLong();
 
     public CloudflareWarpChecker(AuthCraft plugin, AuditLogger auditLogger) {
         this.plugin = plugin;
         this.auditLogger = auditLogger;
+        this.executor = Executors.newFixedThreadPool(2, new NamedThreadFactory("AuthCraft-Warp"));
+        this.inFlight = new ConcurrentHashMap<>();
+        reload();
     }
 
-    public boolean isUsingWarp(String ip) {
+    // Перечитывает настройки, режим и файлы диапазонов; вызывается при старте и из /authcraft reload.
+    // Кэш вердиктов создаётся заново: его размер и TTL могли измениться, а старые вердикты — устареть
+    public void reload() {
+        int cacheSize = plugin.getConfig().getInt("cloudflare_warp.cache_size", 4096);
+        long ttlMillis = plugin.getConfig().getLong("cloudflare_warp.cache_ttl_seconds", 600) * 1000L;
+        verdicts = new BoundedCache<>(cacheSize, ttlMillis);
+        timeoutMillis = Math.max(100, plugin.getConfig().getInt("cloudflare_warp.timeout_ms", 3000));
+        failOpen = !plugin.getConfig().getString("cloudflare_warp.fail_policy", "open").equalsIgnoreCase("closed");
+        localMode = plugin.getConfig().getString("cloudflare_warp.source", "remote").equalsIgnoreCase("local");
+        if (!localMode) {
+            ranges = CidrSet.empty();
+            return;
+        }
+        List<String> files = new ArrayList<>();
+        files.add(plugin.getConfig().getString("cloudflare_warp.ranges_file", "warp_ranges.txt"));
+        files.addAll(plugin.getConfig().getStringList("cloudflare_warp.extra_ranges_files"));
+        CidrSet.Builder builder = new CidrSet.Builder();
+        for (String name : files) {
+            File file = new File(plugin.getDataFolder(), name);
+            if (!file.exists() && name.equals("warp_ranges.txt")) {
+                plugin.saveResource("warp_ranges.txt", false);
+            }
+            if (!file.exists()) {
+                auditLogger.log("Cloudflare Warp ranges file not found: " + file.getAbsolutePath());
+                continue;
+            }
+            try {
+                int lineNumber = 0;
+                for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                    lineNumber++;
+                    try {
+                        builder.add(line);
+                    } catch (UnknownHostException | NumberFormatException e) {
+                        auditLogger.log("Invalid range in " + name + ":" + lineNumber + ": " + line.trim());
+                    }
+                }
+            } catch (IOException e) {
+                auditLogger.log("Failed to read Cloudflare Warp ranges file " + name + ": " + e.getMessage());
+            }
+        }
+        ranges = builder.build();
+        auditLogger.log("Loaded " + ranges.size() + " Cloudflare Warp/VPN ranges");
+    }
+
+    public CompletableFuture<Boolean> checkAsync(String ip) {
+        // Вердикт, полученный до reload, попадёт в старый кэш, а не в новый
+        BoundedCache<String, Boolean> cache = verdicts;
+        Boolean cached = cache.get(ip);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<Boolean> created = new CompletableFuture<>();
+        CompletableFuture<Boolean> existing = inFlight.putIfAbsent(ip, created);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing;
+        }
+        executor.execute(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                boolean usingWarp = lookup(ip);
+                cache.put(ip, usingWarp);
+                created.complete(usingWarp);
+            } catch (Exception e) {
+                failures.incrementAndGet();
+                auditLogger.log("Failed to check Cloudflare Warp for IP " + ip + ": " + e.getMessage());
+                created.completeExceptionally(e);
+            } finally {
+                recordLatency(System.currentTimeMillis() - start);
+                inFlight.remove(ip, created);
+            }
+        });
+        return created;
+    }
+
+    // Блокирующая проверка для предлогина. null — результат неизвестен (ошибка или таймаут).
+    public Boolean isUsingWarp(InetAddress address) {
+        if (localMode) {
+            localLookups.incrementAndGet();
+            return ranges.contains(address);
+        }
         try {
-            URL url = new URL("https://1.1.1.1/cdn-cgi/trace");
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestProperty("X-Forwarded-For", ip);
-            conn.setRequestMethod("GET");
-            BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
+            return checkAsync(address.getHostAddress()).get(timeoutMillis * 2L, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public boolean isFailOpen() {
+        return failOpen;
+    }
+
+    private boolean lookup(String ip) throws IOException {
+        URL url = new URL("https://1.1.1.1/cdn-cgi/trace");
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setConnectTimeout(timeoutMillis);
+        conn.setReadTimeout(timeoutMillis);
+        conn.setRequestProperty("X-Forwarded-For", ip);
+        conn.setRequestMethod("GET");
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
+            lookups.incrementAndGet();
             String line;
             while ((line = reader.readLine()) != null) {
-                if (line.startsWith("warp=") && line.equals("warp=on")) {
-                    reader.close();
+                if (line.equals("warp=on")) {
                     return true;
                 }
             }
-            reader.close();
             return false;
-        } catch (Exception e) {
-            auditLogger.log("Failed to check Cloudflare Warp for IP " + ip + ": " + e.getMessage());
-            return false; // Fallback to allow connection
+        } finally {
+            conn.disconnect();
         }
     }
+
+    private void recordLatency(long millis) {
+        totalLatencyMillis.addAndGet(millis);
+        long max;
+        do {
+            max = maxLatencyMillis.get();
+        } while (millis > max && !maxLatencyMillis.compareAndSet(max, millis));
+    }
+
+    public boolean isLocalMode() {
+        return localMode;
+    }
+
+    public int getRangeCount() {
+        return ranges.size();
+    }
+
+    public long getLocalLookups() {
+        return localLookups.get();
+    }
+
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getAverageLatencyMillis() {
+        long count = lookups.get() + failures.get();
+        return count == 0 ? 0 : totalLatencyMillis.get() / count;
+    }
+
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis.get();
+    }
+
+    public BoundedCache<String, Boolean> getVerdictCache() {
+        return verdicts;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
 }
@@ -1,22 +1,38 @@
 package com.httydcraft.authcraft;
 
 import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.util.Base64;
+import java.util.logging.Logger;
 
 public class CryptManager {
-    private final AuthCraft plugin;
+    private static final String PREFIX_V2 = "v2:";
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_BITS = 128;
+    // Cipher не потокобезопасен, а Cipher.getInstance каждый раз обходит список провайдеров — держим по экземпляру на поток
+    private static final ThreadLocal<Cipher> GCM_CIPHER = ThreadLocal.withInitial(() -> newCipher("AES/GCM/NoPadding"));
+    private static final ThreadLocal<Cipher> LEGACY_CIPHER = ThreadLocal.withInitial(() -> newCipher("AES/ECB/PKCS5Padding"));
+
+    private final SecureRandom random = new SecureRandom();
+    private final Logger logger;
     private final SecretKeySpec key;
 
     public CryptManager(AuthCraft plugin) {
-        this.plugin = plugin;
-        String keyStr = plugin.getConfig().getString("encryption.key", generateDefaultKey());
+        this(plugin.getConfig().getString("encryption.key", generateDefaultKey(plugin)), plugin.getLogger());
+    }
+
+    // Ключ задан напрямую, без конфига плагина (бенчмарки)
+    CryptManager(String keyStr, Logger logger) {
+        this.logger = logger;
         this.key = createKey(keyStr);
     }
 
-    private String generateDefaultKey() {
+    private static String generateDefaultKey(AuthCraft plugin) {
         String defaultKey = "default_authcraft_key_16";
         plugin.getConfig().set("encryption.key", defaultKey);
         plugin.saveConfig();
@@ -32,38 +48,60 @@ public class CryptManager {
             System.arraycopy(keyBytes, 0, key16, 0, 16);
             return new SecretKeySpec(key16, "AES");
         } catch (Exception e) {
-            plugin.getLogger().severe("Failed to create encryption key: " + e.getMessage());
+            logger.severe("Failed to create encryption key: " + e.getMessage());
             return null;
         }
     }
 
+    private static Cipher newCipher(String transformation) {
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Новый формат: "v2:" + Base64(IV || шифротекст || тег GCM)
     public String encrypt(String data) {
         if (key == null) {
             return data;
         }
         try {
-            Cipher cipher = Cipher.getInstance("AES");
-            cipher.init(Cipher.ENCRYPT_MODE, key);
-            byte[] encrypted = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(encrypted);
+            byte[] iv = new byte[GCM_IV_LENGTH];
+            random.nextBytes(iv);
+            Cipher cipher = GCM_CIPHER.get();
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, iv));
+            byte[] plain = data.getBytes(StandardCharsets.UTF_8);
+            byte[] out = new byte[GCM_IV_LENGTH + cipher.getOutputSize(plain.length)];
+            System.arraycopy(iv, 0, out, 0, GCM_IV_LENGTH);
+            cipher.doFinal(plain, 0, plain.length, out, GCM_IV_LENGTH);
+            return PREFIX_V2 + Base64.getEncoder().encodeToString(out);
         } catch (Exception e) {
-            plugin.getLogger().warning("Encryption failed: " + e.getMessage());
+            logger.warning("Encryption failed: " + e.getMessage());
             return data;
         }
     }
 
+    // Строки без префикса — старый формат AES/ECB, их по-прежнему читаем
     public String decrypt(String encryptedData) {
         if (key == null) {
             return encryptedData;
         }
         try {
-            Cipher cipher = Cipher.getInstance("AES");
+            if (encryptedData.startsWith(PREFIX_V2)) {
+                byte[] decoded = Base64.getDecoder().decode(encryptedData.substring(PREFIX_V2.length()));
+                Cipher cipher = GCM_CIPHER.get();
+                cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, decoded, 0, GCM_IV_LENGTH));
+                byte[] decrypted = cipher.doFinal(decoded, GCM_IV_LENGTH, decoded.length - GCM_IV_LENGTH);
+                return new String(decrypted, StandardCharsets.UTF_8);
+            }
+            Cipher cipher = LEGACY_CIPHER.get();
             cipher.init(Cipher.DECRYPT_MODE, key);
             byte[] decoded = Base64.getDecoder().decode(encryptedData);
             byte[] decrypted = cipher.doFinal(decoded);
             return new String(decrypted, StandardCharsets.UTF_8);
         } catch (Exception e) {
-            plugin.getLogger().warning("Decryption failed: " + e.getMessage());
+            logger.warning("Decryption failed: " + e.getMessage());
             return encryptedData;
         }
     }
@@ -1,7 +1,9 @@
 package com.httydcraft.authcraft;
 
+import org.bukkit.Location;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.event.block.BlockPlaceEvent;
@@ -12,32 +14,61 @@ public class EventListener implements Listener {
     private final AuthCraft plugin;
     private final AuthManager authManager;
     private final MessageUtils messageUtils;
+    private final AuditLogger auditLogger;
 
     public EventListener(AuthCraft plugin, AuthManager authManager, UtilsManager utilsManager) {
         this.plugin = plugin;
         this.authManager = authManager;
         this.messageUtils = utilsManager.getMessageUtils();
+        this.auditLogger = utilsManager.getAuditLogger();
     }
 
     public void register() {
         plugin.getServer().getPluginManager().registerEvents(this, plugin);
     }
 
+    // Проверка WARP и загрузка записи игрока заранее, вне главного потока
+    @EventHandler(priority = EventPriority.HIGHEST)
+    public void onAsyncPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+        String warpDenial = authManager.checkWarp(event.getAddress());
+        if (warpDenial != null) {
+            auditLogger.log(AuditRecord.Type.CONNECTION, event.getName(), authManager.getIdentifier(event.getName(), event.getUniqueId()),
+                    event.getAddress().getHostAddress(), "DENIED", warpDenial);
+            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, messageUtils.getMessage(warpDenial));
+            return;
+        }
+        authManager.prefetchPlayerData(authManager.getIdentifier(event.getName(), event.getUniqueId()));
+    }
+
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
-        if (!authManager.checkWarp(player)) {
-            player.kickPlayer(messageUtils.getMessage("cloudflare_warp.kick"));
-            return;
-        }
-        authManager.setPlayerState(player.getUniqueId(), PlayerState.UNAUTHENTICATED);
-        player.teleport(plugin.getServer().getWorld("limbo").getSpawnLocation());
+        authManager.startSession(player.getUniqueId());
         // Включить разрешение на полет в limbo, чтобы не кикало
-        player.setAllowFlight(true);
-        player.setFlying(true);
+        authManager.enterLimbo(player);
 
         // Проверить регистрацию и авторизацию
-        boolean isRegistered = authManager.isRegistered(String.valueOf(player.getUniqueId()));
+        String identifier = authManager.getIdentifier(player);
+        CacheManager.CachedPlayer cached = authManager.getCachedPlayer(identifier);
+        if (cached != null) {
+            sendAuthPrompt(player, cached.isRegistered());
+            return;
+        }
+        // Предзагрузка не удалась — загружаем асинхронно
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            boolean isRegistered = authManager.isRegistered(identifier);
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                if (player.isOnline()) {
+                    sendAuthPrompt(player, isRegistered);
+                }
+            });
+        });
+    }
+
+    private void sendAuthPrompt(Player player, boolean isRegistered) {
         boolean isAuthenticated = authManager.getPlayerState(player.getUniqueId()) == PlayerState.AUTHENTICATED;
         if (!isRegistered) {
             player.sendMessage(messageUtils.getMessage("register.usage"));
@@ -48,29 +79,24 @@ public class EventListener implements Listener {
 
     @EventHandler
     public void onPlayerQuit(PlayerQuitEvent event) {
-        authManager.setPlayerState(event.getPlayer().getUniqueId(), PlayerState.UNAUTHENTICATED);
-        // Отключить полет при выходе
-        event.getPlayer().setAllowFlight(false);
-        event.getPlayer().setFlying(false);
+        // Вернуть полет, который был до limbo
+        authManager.restoreFlight(event.getPlayer());
+        authManager.endSession(event.getPlayer().getUniqueId());
+        plugin.getRoleManager().cleanupPlayer(event.getPlayer());
     }
 
-    @EventHandler
+    @EventHandler(ignoreCancelled = true)
     public void onPlayerMove(PlayerMoveEvent event) {
-        Player player = event.getPlayer();
-        if (authManager.getPlayerState(player.getUniqueId()) != PlayerState.AUTHENTICATED) {
-            event.setCancelled(true);
-            // Всегда держим разрешение на полет в limbo
-            if (player.getWorld().getName().equalsIgnoreCase("limbo")) {
-                player.setAllowFlight(true);
-                player.setFlying(true);
-            }
-        } else {
-            // Отключить полет после авторизации
-            if (player.getAllowFlight()) {
-                player.setAllowFlight(false);
-                player.setFlying(false);
-            }
+        if (authManager.getPlayerState(event.getPlayer().getUniqueId()) == PlayerState.AUTHENTICATED) {
+            return;
+        }
+        // Поворот головы без перемещения не блокируем
+        Location from = event.getFrom();
+        Location to = event.getTo();
+        if (to == null || (from.getX() == to.getX() && from.getY() == to.getY() && from.getZ() == to.getZ())) {
+            return;
         }
+        event.setCancelled(true);
     }
 
     @EventHandler
@@ -0,0 +1,86 @@
+package com.httydcraft.authcraft;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+// Следит за одним файлом через WatchService (на самом деле за его каталогом).
+// Редакторы сохраняют файл несколькими событиями подряд, поэтому onChange вызывается
+// один раз, когда события стихнут на debounceMillis. onChange выполняется в потоке наблюдателя.
+public class FileWatcher {
+    private final Path file;
+    private final long debounceMillis;
+    private final Runnable onChange;
+    private final AuditLogger auditLogger;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    public FileWatcher(Path file, long debounceMillis, Runnable onChange, AuditLogger auditLogger) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.debounceMillis = debounceMillis;
+        this.onChange = onChange;
+        this.auditLogger = auditLogger;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::run, "AuthCraft-Watch-" + file.getFileName());
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = drain(key);
+                // Ждём, пока серия событий закончится
+                while (changed) {
+                    key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+                    if (key == null) {
+                        break;
+                    }
+                    drain(key);
+                }
+                if (changed) {
+                    try {
+                        onChange.run();
+                    } catch (RuntimeException e) {
+                        auditLogger.log("Failed to handle change of " + file.getFileName() + ": " + e);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Остановлен
+        }
+    }
+
+    private boolean drain(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || (context instanceof Path && file.getFileName().equals(context))) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    public void stop() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Игнорируем
+        }
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,154 @@
+package com.httydcraft.authcraft;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class HashingExecutor {
+    // Чем меньше ordinal, тем раньше задача берётся из очереди
+    public enum Priority {
+        REGISTERED,
+        NEW_ACCOUNT
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final int threads;
+    private final int maxQueued;
+    private final int maxQueuedPerIp;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ConcurrentHashMap<String, Integer> queuedPerIp = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejectedQueueFull = new AtomicLong();
+    private final AtomicLong rejectedIpLimit = new AtomicLong();
+
+    public static class IpLimitException extends RejectedExecutionException {
+        private static final long serialVersionUID = 1L;
+
+        public IpLimitException(String ip) {
+            super("Too many queued hash jobs for " + ip);
+        }
+    }
+
+    private class HashJob implements Runnable, Comparable<HashJob> {
+        private final String ip;
+        private final Priority priority;
+        private final long order;
+        private final Runnable task;
+
+        HashJob(String ip, Priority priority, Runnable task) {
+            this.ip = ip;
+            this.priority = priority;
+            this.order = sequence.getAndIncrement();
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            release(ip);
+            try {
+                task.run();
+            } finally {
+                completed.incrementAndGet();
+            }
+        }
+
+        @Override
+        public int compareTo(HashJob other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(order, other.order);
+        }
+    }
+
+    public HashingExecutor(AuthCraft plugin) {
+        int configuredThreads = plugin.getConfig().getInt("hashing.threads", 0);
+        double cpuShare = plugin.getConfig().getDouble("hashing.cpu_share", 0.5);
+        this.threads = configuredThreads > 0 ? configuredThreads
+                : Math.max(1, (int) (Runtime.getRuntime().availableProcessors() * cpuShare));
+        this.maxQueued = Math.max(1, plugin.getConfig().getInt("hashing.queue_size", 64));
+        this.maxQueuedPerIp = Math.max(1, plugin.getConfig().getInt("hashing.per_ip_limit", 2));
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), new NamedThreadFactory("AuthCraft-Hash"));
+    }
+
+    // Ставит задачу в очередь; при переполнении бросает RejectedExecutionException (или IpLimitException)
+    public void execute(String ip, Priority priority, Runnable task) {
+        if (!acquireIp(ip)) {
+            rejectedIpLimit.incrementAndGet();
+            throw new IpLimitException(ip);
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            release(ip);
+            rejectedQueueFull.incrementAndGet();
+            throw new RejectedExecutionException("Hashing queue is full");
+        }
+        try {
+            executor.execute(new HashJob(ip, priority, task));
+        } catch (RejectedExecutionException e) {
+            release(ip);
+            throw e;
+        }
+    }
+
+    private boolean acquireIp(String ip) {
+        boolean[] acquired = new boolean[1];
+        queuedPerIp.compute(ip, (key, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= maxQueuedPerIp) {
+                return count;
+            }
+            acquired[0] = true;
+            return current + 1;
+        });
+        return acquired[0];
+    }
+
+    private void release(String ip) {
+        queued.decrementAndGet();
+        queuedPerIp.computeIfPresent(ip, (key, count) -> count <= 1 ? null : count - 1);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getQueueDepth() {
+        return Math.max(0, queued.get());
+    }
+
+    public int getQueueCapacity() {
+        return maxQueued;
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public long getRejectedQueueFull() {
+        return rejectedQueueFull.get();
+    }
+
+    public long getRejectedIpLimit() {
+        return rejectedIpLimit.get();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
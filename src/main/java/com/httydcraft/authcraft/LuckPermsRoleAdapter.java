@@ -0,0 +1,53 @@
+package com.httydcraft.authcraft;
+
+import net.luckperms.api.LuckPerms;
+import net.luckperms.api.model.user.User;
+import net.luckperms.api.model.user.UserManager;
+import net.luckperms.api.node.Node;
+import net.luckperms.api.node.types.InheritanceNode;
+import org.bukkit.Server;
+import org.bukkit.plugin.RegisteredServiceProvider;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+// Прямой доступ к LuckPerms API вместо reflection.
+// Класс загружается, только если LuckPerms установлен, поэтому в публичных сигнатурах нет типов LuckPerms.
+public class LuckPermsRoleAdapter {
+    private final UserManager userManager;
+
+    private LuckPermsRoleAdapter(UserManager userManager) {
+        this.userManager = userManager;
+    }
+
+    // null — сервис LuckPerms не зарегистрирован
+    public static LuckPermsRoleAdapter create(Server server) {
+        RegisteredServiceProvider<LuckPerms> provider = server.getServicesManager().getRegistration(LuckPerms.class);
+        if (provider == null || provider.getProvider() == null) {
+            return null;
+        }
+        return new LuckPermsRoleAdapter(provider.getProvider().getUserManager());
+    }
+
+    // Основная группа уже загруженного пользователя; null — пользователь не загружен
+    public String getPrimaryGroup(UUID uuid) {
+        User user = userManager.getUser(uuid);
+        return user == null ? null : user.getPrimaryGroup();
+    }
+
+    // Загрузка пользователя из хранилища LuckPerms, не блокирует вызывающий поток
+    public CompletableFuture<String> loadPrimaryGroup(UUID uuid) {
+        return userManager.loadUser(uuid).thenApply(User::getPrimaryGroup);
+    }
+
+    // modifyUser сам загружает пользователя, применяет изменение и сохраняет его асинхронно
+    public CompletableFuture<Void> addGroup(UUID uuid, String group) {
+        Node node = InheritanceNode.builder(group).build();
+        return userManager.modifyUser(uuid, user -> user.data().add(node));
+    }
+
+    public CompletableFuture<Void> removeGroup(UUID uuid, String group) {
+        Node node = InheritanceNode.builder(group).build();
+        return userManager.modifyUser(uuid, user -> user.data().remove(node));
+    }
+}
@@ -0,0 +1,281 @@
+package com.httydcraft.authcraft;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Очередь исходящих сообщений одного бота (Telegram или VK).
+// enqueue() не блокирует; отправка идёт в пуле потоков с ограничением частоты
+// на чат и на бота целиком, повторами с backoff и склейкой сообщений в один чат.
+public class OutboundMessenger {
+    private final String name;
+    private final Sender sender;
+    private final AuditLogger auditLogger;
+    private final ScheduledThreadPoolExecutor executor;
+    private final ConcurrentHashMap<String, ChatQueue> chats = new ConcurrentHashMap<>();
+    private final TokenBucket globalBucket;
+    private final double chatRate;
+    private final int queueCapacity;
+    private final int maxRetries;
+    private final int maxMessageLength;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong totalLatencyMillis = new AtomicLong();
+    private final AtomicLong maxLatencyMillis = new AtomicLong();
+
+    // Отправка одного сообщения. messageId не меняется между повторами (для дедупликации на стороне API).
+    public interface Sender {
+        void send(String chatId, String text, long messageId) throws SendException;
+    }
+
+    public static class SendException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean retryable;
+        private final long retryAfterMillis;
+
+        public SendException(String message, boolean retryable, long retryAfterMillis) {
+            super(message);
+            this.retryable = retryable;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        public boolean isRetryable() {
+            return retryable;
+        }
+
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+    }
+
+    private static class Message {
+        final String text;
+        final long enqueuedAt;
+        final int parts;
+
+        Message(String text, long enqueuedAt, int parts) {
+            this.text = text;
+            this.enqueuedAt = enqueuedAt;
+            this.parts = parts;
+        }
+    }
+
+    // Сообщения одного чата. Обрабатывается не больше чем одной задачей за раз (scheduled).
+    private static class ChatQueue {
+        final String chatId;
+        final ArrayDeque<Message> messages = new ArrayDeque<>();
+        final TokenBucket bucket;
+        Message retrying;
+        long retryId;
+        int attempts;
+        boolean scheduled;
+        boolean removed;
+
+        ChatQueue(String chatId, double rate) {
+            this.chatId = chatId;
+            this.bucket = new TokenBucket(rate, 1);
+        }
+    }
+
+    public OutboundMessenger(String name, Sender sender, AuditLogger auditLogger, int threads, double globalRate,
+                             double chatRate, int queueCapacity, int maxRetries, int maxMessageLength) {
+        this.name = name;
+        this.sender = sender;
+        this.auditLogger = auditLogger;
+        this.executor = new ScheduledThreadPoolExecutor(Math.max(1, threads), new NamedThreadFactory("AuthCraft-" + name + "-Out"));
+        this.executor.setRemoveOnCancelPolicy(true);
+        this.globalBucket = new TokenBucket(globalRate, Math.max(1, globalRate));
+        this.chatRate = chatRate;
+        this.queueCapacity = queueCapacity;
+        this.maxRetries = maxRetries;
+        this.maxMessageLength = maxMessageLength;
+    }
+
+    public void enqueue(String chatId, String text) {
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+        Message message = new Message(text, System.currentTimeMillis(), 1);
+        while (true) {
+            ChatQueue chat = chats.computeIfAbsent(chatId, id -> new ChatQueue(id, chatRate));
+            synchronized (chat) {
+                if (chat.removed) {
+                    continue;
+                }
+                chat.messages.add(message);
+                if (!chat.scheduled) {
+                    chat.scheduled = true;
+                    schedule(chat, 0);
+                }
+                return;
+            }
+        }
+    }
+
+    private void schedule(ChatQueue chat, long delayNanos) {
+        try {
+            executor.schedule(() -> drain(chat), delayNanos, TimeUnit.NANOSECONDS);
+        } catch (java.util.concurrent.RejectedExecutionException e) {
+            // Остановлен
+        }
+    }
+
+    private void drain(ChatQueue chat) {
+        long now = System.nanoTime();
+        Message message;
+        synchronized (chat) {
+            if (chat.retrying == null && chat.messages.isEmpty()) {
+                // Чат держим, пока не восстановится его лимит, иначе новое сообщение обойдёт ограничение
+                if (chat.bucket.isFull(now)) {
+                    chat.removed = true;
+                    chat.scheduled = false;
+                    chats.remove(chat.chatId, chat);
+                } else {
+                    schedule(chat, chat.bucket.delay(now) + TimeUnit.MILLISECONDS.toNanos(1000));
+                }
+                return;
+            }
+        }
+        long wait = chat.bucket.delay(now);
+        if (wait == 0) {
+            wait = globalBucket.tryAcquire(now);
+        }
+        if (wait > 0) {
+            schedule(chat, wait);
+            return;
+        }
+        chat.bucket.tryAcquire(now);
+        synchronized (chat) {
+            message = chat.retrying != null ? chat.retrying : coalesce(chat);
+            chat.retrying = null;
+            if (chat.attempts == 0) {
+                chat.retryId = ThreadLocalRandom.current().nextLong(1, Integer.MAX_VALUE);
+            }
+        }
+        try {
+            sent.incrementAndGet();
+            sender.send(chat.chatId, message.text, chat.retryId);
+            long latency = System.currentTimeMillis() - message.enqueuedAt;
+            delivered.addAndGet(message.parts);
+            totalLatencyMillis.addAndGet(latency * message.parts);
+            recordMaxLatency(latency);
+            finish(chat, message);
+        } catch (SendException e) {
+            if (e.isRetryable() && chat.attempts < maxRetries) {
+                chat.attempts++;
+                retries.incrementAndGet();
+                long backoff = e.getRetryAfterMillis() > 0 ? e.getRetryAfterMillis()
+                        : Math.min(30_000L, 500L << (chat.attempts - 1));
+                synchronized (chat) {
+                    chat.retrying = message;
+                }
+                schedule(chat, TimeUnit.MILLISECONDS.toNanos(backoff));
+                return;
+            }
+            failed.addAndGet(message.parts);
+            auditLogger.log("Failed to send " + name + " message to " + chat.chatId + ": " + e.getMessage());
+            finish(chat, message);
+        } catch (RuntimeException e) {
+            failed.addAndGet(message.parts);
+            auditLogger.log("Failed to send " + name + " message to " + chat.chatId + ": " + e);
+            finish(chat, message);
+        }
+    }
+
+    // Всё, что накопилось для чата, уходит одним сообщением (в пределах лимита длины)
+    private Message coalesce(ChatQueue chat) {
+        Message first = chat.messages.poll();
+        Message next = chat.messages.peek();
+        if (next == null || first.text.length() + 2 + next.text.length() > maxMessageLength) {
+            return first;
+        }
+        StringBuilder text = new StringBuilder(first.text);
+        int parts = first.parts;
+        while (next != null && text.length() + 2 + next.text.length() <= maxMessageLength) {
+            chat.messages.poll();
+            text.append("\n\n").append(next.text);
+            parts += next.parts;
+            next = chat.messages.peek();
+        }
+        coalesced.addAndGet(parts - first.parts);
+        return new Message(text.toString(), first.enqueuedAt, parts);
+    }
+
+    private void finish(ChatQueue chat, Message message) {
+        queued.addAndGet(-message.parts);
+        chat.attempts = 0;
+        // Следующее сообщение или освобождение чата
+        schedule(chat, 0);
+    }
+
+    private void recordMaxLatency(long millis) {
+        long max;
+        do {
+            max = maxLatencyMillis.get();
+        } while (millis > max && !maxLatencyMillis.compareAndSet(max, millis));
+    }
+
+    public int getQueueDepth() {
+        return Math.max(0, queued.get());
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getAverageLatencyMillis() {
+        long count = delivered.get();
+        return count == 0 ? 0 : totalLatencyMillis.get() / count;
+    }
+
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis.get();
+    }
+
+    // Даёт отправить то, что уже в очереди, но не дольше timeoutMillis
+    public void shutdown(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (queued.get() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,58 @@
+package com.httydcraft.authcraft;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Префиксное дерево зарегистрированных прав по сегментам через точку.
+// Нужно для раскрытия "*" и "foo.*" без перебора всех прав сервера на каждый шаблон.
+public class PermissionTrie {
+    private final Node root = new Node();
+
+    private static class Node {
+        final Map<String, Node> children = new HashMap<>();
+        String permission;
+    }
+
+    public void add(String permission) {
+        Node node = root;
+        for (String segment : permission.toLowerCase().split("\\.")) {
+            node = node.children.computeIfAbsent(segment, key -> new Node());
+        }
+        node.permission = permission.toLowerCase();
+    }
+
+    // "*" — все права, "foo.*" — все права под foo (само foo не входит)
+    public List<String> expand(String wildcard) {
+        List<String> result = new ArrayList<>();
+        String pattern = wildcard.toLowerCase();
+        if (pattern.equals("*")) {
+            collect(root, result);
+            return result;
+        }
+        if (!pattern.endsWith(".*")) {
+            return result;
+        }
+        Node node = root;
+        for (String segment : pattern.substring(0, pattern.length() - 2).split("\\.")) {
+            node = node.children.get(segment);
+            if (node == null) {
+                return result;
+            }
+        }
+        for (Node child : node.children.values()) {
+            collect(child, result);
+        }
+        return result;
+    }
+
+    private static void collect(Node node, List<String> result) {
+        if (node.permission != null) {
+            result.add(node.permission);
+        }
+        for (Node child : node.children.values()) {
+            collect(child, result);
+        }
+    }
+}
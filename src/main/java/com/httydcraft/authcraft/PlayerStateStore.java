@@ -0,0 +1,40 @@
+package com.httydcraft.authcraft;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Состояния авторизации онлайн-игроков. Чтение без блокировок и аллокаций,
+// переходы между состояниями — через compare-and-set.
+public class PlayerStateStore {
+    private final ConcurrentHashMap<UUID, AtomicReference<PlayerState>> states = new ConcurrentHashMap<>();
+
+    public PlayerState get(UUID uuid) {
+        AtomicReference<PlayerState> ref = states.get(uuid);
+        return ref != null ? ref.get() : PlayerState.UNAUTHENTICATED;
+    }
+
+    // Начинает новую сессию игрока (вход на сервер)
+    public void reset(UUID uuid) {
+        states.put(uuid, new AtomicReference<>(PlayerState.UNAUTHENTICATED));
+    }
+
+    public void remove(UUID uuid) {
+        states.remove(uuid);
+    }
+
+    // Переход expected -> next; false, если состояние уже изменил другой поток
+    public boolean transition(UUID uuid, PlayerState expected, PlayerState next) {
+        AtomicReference<PlayerState> ref = states.get(uuid);
+        return ref != null && ref.compareAndSet(expected, next);
+    }
+
+    // Безусловная запись; одна AtomicReference на игрока, иначе CAS в transition работал бы со старой ссылкой
+    public void set(UUID uuid, PlayerState state) {
+        states.computeIfAbsent(uuid, key -> new AtomicReference<>()).set(state);
+    }
+
+    public int size() {
+        return states.size();
+    }
+}
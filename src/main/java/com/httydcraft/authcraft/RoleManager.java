@@ -1,28 +1,49 @@
 package com.httydcraft.authcraft;
 
 import org.bukkit.entity.Player;
-import org.bukkit.plugin.RegisteredServiceProvider;
 import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.permissions.Permission;
 import org.bukkit.permissions.PermissionAttachment;
+import org.bukkit.permissions.PermissionDefault;
+import org.bukkit.plugin.PluginManager;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class RoleManager {
     private final AuthCraft plugin;
     private final AuditLogger auditLogger;
     private final Map<UUID, String> internalRoles;
-    private final Map<String, RoleDefinition> roles = new HashMap<>();
+    private static final String ROLE_PERMISSION_PREFIX = "authcraft.role.";
+
+    private Map<String, RoleDefinition> roles = new HashMap<>();
+    private volatile Map<String, CompiledRole> compiledRoles = Collections.emptyMap();
     private final Map<UUID, PermissionAttachment> attachments = new HashMap<>();
+    // Роль, чей шаблон сейчас висит на attachment игрока
+    private final Map<UUID, String> appliedRoles = new HashMap<>();
+
+    // Переприменение прав после перезагрузки ролей, порциями по тикам (только главный поток)
+    private final Deque<UUID> reapplyQueue = new ArrayDeque<>();
+    private final Set<UUID> reapplyPending = new HashSet<>();
+    private boolean reapplyScheduled;
+    private final long reapplyBudgetNanos;
+    private FileWatcher rolesWatcher;
 
-    // LuckPerms reflection fields
-    private Object luckPermsProvider = null;
-    private Class<?> luckPermsClass = null;
-    private boolean luckPermsAvailable = false;
+    // null — LuckPerms не установлен, работает внутренняя система ролей
+    private final LuckPermsRoleAdapter luckPerms;
+    // Последняя известная основная группа для пользователей, которых LuckPerms выгрузил
+    private final Map<UUID, String> luckPermsGroups = new ConcurrentHashMap<>();
+    private final Set<UUID> loading = ConcurrentHashMap.newKeySet();
 
     // Класс для описания роли
     private static class RoleDefinition {
@@ -32,37 +53,91 @@ public class RoleManager {
         public RoleDefinition(String name) { this.name = name; }
     }
 
+    // Роль после наследования и раскрытия шаблонов
+    private static class CompiledRole {
+        public final String name;
+        public final String node;
+        public final Map<String, Boolean> permissions;
+        public CompiledRole(String name, Map<String, Boolean> permissions) {
+            this.name = name;
+            this.node = ROLE_PERMISSION_PREFIX + name.toLowerCase();
+            this.permissions = permissions;
+        }
+    }
+
     public RoleManager(AuthCraft plugin, AuditLogger auditLogger) {
         this.plugin = plugin;
         this.auditLogger = auditLogger;
-        this.internalRoles = new HashMap<>();
+        this.internalRoles = new ConcurrentHashMap<>();
+        this.reapplyBudgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, plugin.getConfig().getLong("roles.reapply_budget_ms", 2)));
         loadRoles();
-        try {
-            luckPermsClass = Class.forName("net.luckperms.api.LuckPerms");
-            Class<?> servicesManagerClass = plugin.getServer().getServicesManager().getClass();
-            Object provider = plugin.getServer().getServicesManager().getRegistration(luckPermsClass);
-            if (provider != null) {
-                luckPermsProvider = provider.getClass().getMethod("getProvider").invoke(provider);
-                luckPermsAvailable = luckPermsProvider != null;
-            }
-        } catch (Exception | NoClassDefFoundError e) {
-            luckPermsAvailable = false;
-        }
-        if (luckPermsAvailable) {
-            auditLogger.log("LuckPerms detected (reflection), using LuckPerms for role management");
+        // Права плагинов, включённых после нас, регистрируются к первому тику — тогда раскрываем шаблоны заново
+        plugin.getServer().getScheduler().runTask(plugin, this::compileRoles);
+        this.luckPerms = createLuckPermsAdapter(plugin);
+        if (luckPerms != null) {
+            auditLogger.log("LuckPerms detected, using LuckPerms for role management");
         } else {
             auditLogger.log("Using internal role system");
         }
+        if (plugin.getConfig().getBoolean("roles.watch", true)) {
+            startWatcher();
+        }
+    }
+
+    private void startWatcher() {
+        try {
+            rolesWatcher = new FileWatcher(new File(plugin.getDataFolder(), "roles.yml").toPath(), 500, this::onRolesFileChanged, auditLogger);
+            rolesWatcher.start();
+        } catch (IOException e) {
+            auditLogger.log("[RoleManager] Не удалось следить за roles.yml: " + e.getMessage());
+        }
+    }
+
+    // Поток наблюдателя: файл разбираем здесь, подмену снимка делаем в главном потоке
+    private void onRolesFileChanged() {
+        Map<String, RoleDefinition> definitions = readRoles();
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            int changed = applyRoles(definitions);
+            auditLogger.log("[RoleManager] roles.yml изменён, ролей изменилось: " + changed);
+        });
+    }
+
+    // Адаптер загружается только при установленном LuckPerms, иначе его классов нет на classpath
+    private static LuckPermsRoleAdapter createLuckPermsAdapter(AuthCraft plugin) {
+        if (plugin.getServer().getPluginManager().getPlugin("LuckPerms") == null) {
+            return null;
+        }
+        try {
+            return LuckPermsRoleAdapter.create(plugin.getServer());
+        } catch (Exception | LinkageError e) {
+            return null;
+        }
     }
 
     public void loadRoles() {
-        roles.clear();
+        roles = readRoles();
+        compileRoles();
+        auditLogger.log("[RoleManager] Загружено ролей: " + roles.size());
+    }
+
+    // /authcraft reload roles (главный поток). Возвращает число изменившихся ролей
+    public int reloadRoles() {
+        return applyRoles(readRoles());
+    }
+
+    private int applyRoles(Map<String, RoleDefinition> definitions) {
+        roles = definitions;
+        return compileRoles();
+    }
+
+    private Map<String, RoleDefinition> readRoles() {
+        Map<String, RoleDefinition> roles = new HashMap<>();
         File file = new File(plugin.getDataFolder(), "roles.yml");
         if (!file.exists()) {
             plugin.saveResource("roles.yml", false);
         }
         YamlConfiguration config = YamlConfiguration.loadConfiguration(file);
-        if (!config.isConfigurationSection("roles")) return;
+        if (!config.isConfigurationSection("roles")) return roles;
         for (String key : config.getConfigurationSection("roles").getKeys(false)) {
             RoleDefinition def = new RoleDefinition(key);
             def.permissions.addAll(config.getStringList("roles." + key + ".permissions"));
@@ -71,45 +146,151 @@ public class RoleManager {
         }
         // Применить наследование
         for (RoleDefinition def : roles.values()) {
-            resolveInheritance(def, new HashSet<>());
+            resolveInheritance(roles, def, new HashSet<>());
         }
-        auditLogger.log("[RoleManager] Загружено ролей: " + roles.size());
+        return roles;
     }
 
-    private void resolveInheritance(RoleDefinition def, Set<String> visited) {
+    private void resolveInheritance(Map<String, RoleDefinition> roles, RoleDefinition def, Set<String> visited) {
         if (!visited.add(def.name)) return;
         for (String parent : def.inherit) {
             RoleDefinition parentDef = roles.get(parent);
             if (parentDef != null) {
-                resolveInheritance(parentDef, visited);
+                resolveInheritance(roles, parentDef, visited);
                 def.permissions.addAll(parentDef.permissions);
             }
         }
     }
 
+    // Каждая роль компилируется в неизменяемый набор прав с раскрытыми шаблонами
+    // и регистрируется как одно право authcraft.role.<роль> с этими правами в детях.
+    // Новый снимок подменяется целиком; игроки с изменившимися ролями переприменяются по тикам
+    public int compileRoles() {
+        PluginManager pluginManager = plugin.getServer().getPluginManager();
+        PermissionTrie trie = new PermissionTrie();
+        for (Permission permission : pluginManager.getPermissions()) {
+            if (!permission.getName().startsWith(ROLE_PERMISSION_PREFIX)) {
+                trie.add(permission.getName());
+            }
+        }
+        Map<String, CompiledRole> compiled = new HashMap<>();
+        for (RoleDefinition def : roles.values()) {
+            Map<String, Boolean> permissions = new LinkedHashMap<>();
+            for (String perm : def.permissions) {
+                permissions.put(perm.toLowerCase(), true);
+                if (perm.equals("*") || perm.endsWith(".*")) {
+                    for (String expanded : trie.expand(perm)) {
+                        permissions.put(expanded, true);
+                    }
+                }
+            }
+            CompiledRole role = new CompiledRole(def.name, Collections.unmodifiableMap(permissions));
+            registerTemplate(pluginManager, role);
+            compiled.put(def.name, role);
+        }
+        Map<String, CompiledRole> previous = compiledRoles;
+        Set<String> changed = new HashSet<>();
+        for (CompiledRole old : previous.values()) {
+            CompiledRole current = compiled.get(old.name);
+            if (current == null) {
+                // Шаблоны удалённых ролей снимаем
+                pluginManager.removePermission(old.node);
+                changed.add(old.name);
+            } else if (!current.permissions.equals(old.permissions)) {
+                changed.add(old.name);
+            }
+        }
+        for (String name : compiled.keySet()) {
+            if (!previous.containsKey(name)) {
+                changed.add(name);
+            }
+        }
+        compiledRoles = Collections.unmodifiableMap(compiled);
+        if (!changed.isEmpty()) {
+            queueReapply(changed);
+        }
+        return changed.size();
+    }
+
+    private CompiledRole resolveRole(Map<String, CompiledRole> compiled, String role) {
+        CompiledRole def = compiled.get(role);
+        return def != null ? def : compiled.get("default");
+    }
+
+    // В очередь попадают только игроки, чья роль изменилась или теперь разрешается в другую роль
+    private void queueReapply(Set<String> changed) {
+        Map<String, CompiledRole> compiled = compiledRoles;
+        for (Map.Entry<UUID, String> entry : appliedRoles.entrySet()) {
+            UUID uuid = entry.getKey();
+            CompiledRole desired = resolveRole(compiled, internalRoles.getOrDefault(uuid, "player"));
+            boolean affected = changed.contains(entry.getValue()) || desired == null || !desired.name.equals(entry.getValue());
+            if (affected && reapplyPending.add(uuid)) {
+                reapplyQueue.add(uuid);
+            }
+        }
+        if (!reapplyQueue.isEmpty() && !reapplyScheduled) {
+            reapplyScheduled = true;
+            plugin.getServer().getScheduler().runTask(plugin, this::reapplyBatch);
+        }
+    }
+
+    // Пересчёт прав — самая дорогая часть, поэтому за тик тратим не больше reapplyBudgetNanos
+    private void reapplyBatch() {
+        long deadline = System.nanoTime() + reapplyBudgetNanos;
+        do {
+            UUID uuid = reapplyQueue.poll();
+            if (uuid == null) {
+                break;
+            }
+            reapplyPending.remove(uuid);
+            Player player = plugin.getServer().getPlayer(uuid);
+            if (player != null && attachments.containsKey(uuid)) {
+                reapply(player);
+            }
+        } while (System.nanoTime() < deadline);
+        if (reapplyQueue.isEmpty()) {
+            reapplyScheduled = false;
+        } else {
+            plugin.getServer().getScheduler().runTask(plugin, this::reapplyBatch);
+        }
+    }
+
+    private void reapply(Player player) {
+        String role = internalRoles.getOrDefault(player.getUniqueId(), "player");
+        CompiledRole desired = resolveRole(compiledRoles, role);
+        if (desired != null && desired.name.equals(appliedRoles.get(player.getUniqueId()))) {
+            // Тот же шаблон, поменялись его дети
+            player.recalculatePermissions();
+        } else {
+            applyPermissions(player, role);
+        }
+    }
+
+    private void registerTemplate(PluginManager pluginManager, CompiledRole role) {
+        Permission existing = pluginManager.getPermission(role.node);
+        if (existing == null) {
+            pluginManager.addPermission(new Permission(role.node, "AuthCraft role " + role.name, PermissionDefault.FALSE, role.permissions));
+        } else {
+            existing.getChildren().clear();
+            // Без recalculatePermissibles: игроков переприменяем порциями в reapplyBatch
+            existing.getChildren().putAll(role.permissions);
+        }
+    }
+
     public void assignRole(Player player, String role) {
         internalRoles.put(player.getUniqueId(), role);
         auditLogger.log("[RoleManager] Сохранили роль '" + role + "' во внутреннюю систему для " + player.getName());
-        if (luckPermsAvailable) {
-            try {
-                Object userManager = luckPermsProvider.getClass().getMethod("getUserManager").invoke(luckPermsProvider);
-                Object user = userManager.getClass().getMethod("getUser", java.util.UUID.class).invoke(userManager, player.getUniqueId());
-                if (user != null) {
-                    // Node.builder("group." + role).build()
-                    Class<?> nodeBuilderClass = Class.forName("net.luckperms.api.node.Node").getMethod("builder", String.class).getDeclaringClass();
-                    Object builder = nodeBuilderClass.getMethod("builder", String.class).invoke(null, "group." + role);
-                    Object node = builder.getClass().getMethod("build").invoke(builder);
-                    Object data = user.getClass().getMethod("data").invoke(user);
-                    data.getClass().getMethod("add", Class.forName("net.luckperms.api.node.Node"))
-                        .invoke(data, node);
-                    userManager.getClass().getMethod("saveUser", user.getClass()).invoke(userManager, user);
-                    auditLogger.log("[RoleManager] Назначили LuckPerms роль '" + role + "' игроку " + player.getName());
+        if (luckPerms != null) {
+            String name = player.getName();
+            UUID uuid = player.getUniqueId();
+            luckPerms.addGroup(uuid, role).whenComplete((ignored, error) -> {
+                luckPermsGroups.remove(uuid);
+                if (error != null) {
+                    auditLogger.log("[RoleManager] Ошибка при назначении роли в LuckPerms: " + error.getMessage());
                 } else {
-                    auditLogger.log("[RoleManager] Не удалось получить LuckPerms User для " + player.getName());
+                    auditLogger.log("[RoleManager] Назначили LuckPerms роль '" + role + "' игроку " + name);
                 }
-            } catch (Exception e) {
-                auditLogger.log("[RoleManager] Ошибка при работе с LuckPerms через reflection: " + e.getMessage());
-            }
+            });
         } else {
             applyPermissions(player, role);
         }
@@ -119,59 +300,63 @@ public class RoleManager {
         // Удаляем старый attachment
         PermissionAttachment old = attachments.remove(player.getUniqueId());
         if (old != null) player.removeAttachment(old);
-        RoleDefinition def = roles.get(role);
-        if (def == null) def = roles.get("default");
+        appliedRoles.remove(player.getUniqueId());
+        CompiledRole def = resolveRole(compiledRoles, role);
         if (def == null) return;
-        PermissionAttachment attachment = player.addAttachment(plugin);
-        for (String perm : def.permissions) {
-            if (perm.equals("*")) {
-                // '*' — все права, Spigot не поддерживает напрямую, можно обработать отдельно
-                continue;
-            }
-            attachment.setPermission(perm, true);
-        }
+        // Одно право-шаблон роли: Bukkit раскрывает его детей за один пересчёт прав
+        PermissionAttachment attachment = player.addAttachment(plugin, def.node, true);
         attachments.put(player.getUniqueId(), attachment);
-        auditLogger.log("[RoleManager] Применены права для роли '" + role + "' игроку " + player.getName());
+        appliedRoles.put(player.getUniqueId(), def.name);
+        auditLogger.log("[RoleManager] Применены права для роли '" + def.name + "' игроку " + player.getName());
     }
 
+    // Вызывается из проверок прав: без reflection и без обращений к хранилищу в вызывающем потоке
     public String getRole(Player player) {
-        if (luckPermsAvailable) {
-            try {
-                Object userManager = luckPermsProvider.getClass().getMethod("getUserManager").invoke(luckPermsProvider);
-                Object user = userManager.getClass().getMethod("getUser", java.util.UUID.class).invoke(userManager, player.getUniqueId());
-                if (user != null) {
-                    String group = (String) user.getClass().getMethod("getPrimaryGroup").invoke(user);
-                    if (group != null && !group.isEmpty()) {
-                        return group;
-                    }
+        UUID uuid = player.getUniqueId();
+        if (luckPerms != null) {
+            String group = luckPerms.getPrimaryGroup(uuid);
+            if (group == null) {
+                // Пользователь ещё не загружен в LuckPerms: берём последнюю известную группу и подгружаем в фоне
+                group = luckPermsGroups.get(uuid);
+                if (group == null) {
+                    loadGroup(uuid);
                 }
-            } catch (Exception e) {
-                auditLogger.log("[RoleManager] Ошибка при получении роли из LuckPerms через reflection: " + e.getMessage());
+            }
+            if (group != null && !group.isEmpty()) {
+                return group;
             }
         }
-        return internalRoles.getOrDefault(player.getUniqueId(), "player");
+        return internalRoles.getOrDefault(uuid, "player");
+    }
+
+    private void loadGroup(UUID uuid) {
+        if (!loading.add(uuid)) {
+            return;
+        }
+        luckPerms.loadPrimaryGroup(uuid).whenComplete((group, error) -> {
+            loading.remove(uuid);
+            if (error != null) {
+                auditLogger.log("[RoleManager] Ошибка при загрузке пользователя LuckPerms: " + error.getMessage());
+            } else if (group != null) {
+                luckPermsGroups.put(uuid, group);
+            }
+        });
     }
 
     public void removeRole(Player player, String role) {
         internalRoles.remove(player.getUniqueId());
         auditLogger.log("[RoleManager] Удалили роль '" + role + "' из внутренней системы для " + player.getName());
-        if (luckPermsAvailable) {
-            try {
-                Object userManager = luckPermsProvider.getClass().getMethod("getUserManager").invoke(luckPermsProvider);
-                Object user = userManager.getClass().getMethod("getUser", java.util.UUID.class).invoke(userManager, player.getUniqueId());
-                if (user != null) {
-                    Class<?> nodeBuilderClass = Class.forName("net.luckperms.api.node.Node").getMethod("builder", String.class).getDeclaringClass();
-                    Object builder = nodeBuilderClass.getMethod("builder", String.class).invoke(null, "group." + role);
-                    Object node = builder.getClass().getMethod("build").invoke(builder);
-                    Object data = user.getClass().getMethod("data").invoke(user);
-                    data.getClass().getMethod("remove", Class.forName("net.luckperms.api.node.Node"))
-                        .invoke(data, node);
-                    userManager.getClass().getMethod("saveUser", user.getClass()).invoke(userManager, user);
-                    auditLogger.log("[RoleManager] Удалили LuckPerms роль '" + role + "' у " + player.getName());
+        if (luckPerms != null) {
+            String name = player.getName();
+            UUID uuid = player.getUniqueId();
+            luckPerms.removeGroup(uuid, role).whenComplete((ignored, error) -> {
+                luckPermsGroups.remove(uuid);
+                if (error != null) {
+                    auditLogger.log("[RoleManager] Ошибка при удалении роли из LuckPerms: " + error.getMessage());
+                } else {
+                    auditLogger.log("[RoleManager] Удалили LuckPerms роль '" + role + "' у " + name);
                 }
-            } catch (Exception e) {
-                auditLogger.log("[RoleManager] Ошибка при удалении роли из LuckPerms через reflection: " + e.getMessage());
-            }
+            });
         } else {
             cleanupPlayer(player);
         }
@@ -181,6 +366,14 @@ public class RoleManager {
     public void cleanupPlayer(Player player) {
         PermissionAttachment old = attachments.remove(player.getUniqueId());
         if (old != null) player.removeAttachment(old);
+        appliedRoles.remove(player.getUniqueId());
+        luckPermsGroups.remove(player.getUniqueId());
+    }
+
+    public void shutdown() {
+        if (rolesWatcher != null) {
+            rolesWatcher.stop();
+        }
     }
 
     // Новый метод: проверка наличия роли
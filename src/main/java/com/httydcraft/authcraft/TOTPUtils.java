@@ -1,26 +1,25 @@
 package com.httydcraft.authcraft;
 
-import dev.samstevens.totp.code.CodeVerifier;
-import dev.samstevens.totp.code.DefaultCodeGenerator;
-import dev.samstevens.totp.code.DefaultCodeVerifier;
 import dev.samstevens.totp.qr.QrData;
 import dev.samstevens.totp.qr.QrGenerator;
 import dev.samstevens.totp.qr.ZxingPngQrGenerator;
 import dev.samstevens.totp.secret.DefaultSecretGenerator;
-import dev.samstevens.totp.time.SystemTimeProvider;
 import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import static dev.samstevens.totp.code.HashingAlgorithm.SHA1;
 
 public class TOTPUtils {
     private final AuthCraft plugin;
     private final CryptManager cryptManager;
-    private final CodeVerifier verifier;
+    private final TotpVerifier verifier;
 
     public TOTPUtils(AuthCraft plugin, CryptManager cryptManager) {
         this.plugin = plugin;
         this.cryptManager = cryptManager;
-        this.verifier = new DefaultCodeVerifier(new DefaultCodeGenerator(), new SystemTimeProvider());
+        this.verifier = new TotpVerifier(cryptManager, plugin.getConfig().getInt("auth.totp_window", 1),
+                TimeUnit.SECONDS.toMillis(plugin.getConfig().getLong("auth.totp_key_cache_seconds", 300)));
     }
 
     public String generateSecret() {
@@ -49,8 +48,16 @@ public class TOTPUtils {
         }
     }
 
-    public boolean verifyCode(String secret, String code) {
-        return verifier.isValidCode(cryptManager.decrypt(secret), code);
+    public boolean verifyCode(UUID playerId, String secret, String code) {
+        return verifier.verify(playerId, secret, code);
+    }
+
+    public void forget(UUID playerId) {
+        verifier.forget(playerId);
+    }
+
+    public void cleanUp() {
+        verifier.cleanUp();
     }
 
     // Получить исходный (plaintext) секрет из зашифрованного
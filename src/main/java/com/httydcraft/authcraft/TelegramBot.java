@@ -1,7 +1,6 @@
 package com.httydcraft.authcraft;
 
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
-import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
@@ -10,23 +9,34 @@ import java.util.UUID;
 
 public class TelegramBot extends TelegramLongPollingBot {
     private final String token;
-    private boolean valid;
+    private final OutboundMessenger outbound;
+    private final boolean longPolling;
+    private volatile boolean valid;
     private static TelegramBot instance;
 
-    public TelegramBot(String token) {
+    // longPolling = false — обновления приходят через TelegramWebhookServer, свой поток опроса не нужен
+    public TelegramBot(String token, OutboundMessenger outbound, boolean longPolling) {
         this.token = token;
+        this.outbound = outbound;
+        this.longPolling = longPolling;
         this.valid = token != null && !token.isEmpty();
-        if (valid) {
-            try {
-                TelegramBotsApi api = new TelegramBotsApi(DefaultBotSession.class);
-                api.registerBot(this);
-            } catch (TelegramApiException e) {
-                valid = false;
-            }
-        }
         instance = this;
     }
 
+    // Запуск опроса отдельно от конструктора: обновления начинают приходить сразу,
+    // и BotManager к этому моменту должен быть полностью собран
+    public void start() {
+        if (!valid || !longPolling) {
+            return;
+        }
+        try {
+            TelegramBotsApi api = new TelegramBotsApi(DefaultBotSession.class);
+            api.registerBot(this);
+        } catch (TelegramApiException e) {
+            valid = false;
+        }
+    }
+
     @Override
     public String getBotUsername() {
         return "AuthCraftBot";
@@ -44,16 +54,16 @@ public class TelegramBot extends TelegramLongPollingBot {
             String chatId = update.getMessage().getChatId().toString();
             AuthCraft plugin = AuthCraft.getInstance();
             BotManager botManager = plugin.getBotManager();
-            // Привязка Telegram
-            if (botManager.tryLinkTelegram(chatId, text)) {
-                sendMessage(chatId, "✅ Ваш Telegram успешно привязан к аккаунту Minecraft!");
-                return;
-            }
-            // Подтверждение входа
+            // Подтверждение входа — первым: код апрува от привязанного аккаунта не должен считаться неверным кодом привязки
             UUID playerId = botManager.getPlayerByTelegram(chatId);
             if (playerId != null && botManager.approveLogin(playerId, text, "TG")) {
                 sendMessage(chatId, "✅ Вход в аккаунт Minecraft разрешён!");
                 plugin.getAuthManager().approveLogin(playerId);
+                return;
+            }
+            // Привязка Telegram
+            if (botManager.tryLinkTelegram(chatId, text)) {
+                sendMessage(chatId, "✅ Код принят. Введите его в игре командой /2fa verify <код>, чтобы завершить привязку Telegram.");
             }
         }
     }
@@ -66,18 +76,12 @@ public class TelegramBot extends TelegramLongPollingBot {
         return "123456789"; // Simplified: Assume admin provides chat ID in config
     }
 
+    // Не блокирует: сообщение уходит через очередь исходящих
     public void sendMessage(String chatId, String text) {
         if (!valid) {
             return;
         }
-        SendMessage message = new SendMessage();
-        message.setChatId(chatId);
-        message.setText(text);
-        try {
-            execute(message);
-        } catch (TelegramApiException e) {
-            // Silent fail
-        }
+        outbound.enqueue(chatId, text);
     }
 
     // Отправка push-апрува
@@ -0,0 +1,47 @@
+package com.httydcraft.authcraft;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// sendMessage через Bot API. 429 и 5xx — повторяем (с retry_after, если он есть), прочие 4xx — нет
+public class TelegramSender implements OutboundMessenger.Sender {
+    private static final Pattern RETRY_AFTER = Pattern.compile("\"retry_after\"\\s*:\\s*(\\d+)");
+
+    private final String sendMessageUrl;
+    private final int timeoutMillis;
+
+    public TelegramSender(String apiUrl, String token, int timeoutMillis) {
+        this.sendMessageUrl = stripSlash(apiUrl) + "/bot" + token + "/sendMessage";
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    static String stripSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    @Override
+    public void send(String chatId, String text, long messageId) throws OutboundMessenger.SendException {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("chat_id", chatId);
+        params.put("text", text);
+        BotHttp.Response response;
+        try {
+            response = BotHttp.postForm(sendMessageUrl, params, timeoutMillis);
+        } catch (IOException e) {
+            throw new OutboundMessenger.SendException(e.toString(), true, 0);
+        }
+        int status = response.getStatus();
+        if (status == 200) {
+            return;
+        }
+        if (status == 429) {
+            Matcher matcher = RETRY_AFTER.matcher(response.getBody());
+            long retryAfter = matcher.find() ? Long.parseLong(matcher.group(1)) * 1000L : 0;
+            throw new OutboundMessenger.SendException("rate limited", true, retryAfter);
+        }
+        throw new OutboundMessenger.SendException("HTTP " + status + ": " + response.getBody(), status >= 500, 0);
+    }
+}
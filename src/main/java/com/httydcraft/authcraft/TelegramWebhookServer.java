@@ -0,0 +1,145 @@
+package com.httydcraft.authcraft;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Приём обновлений Telegram через webhook вместо long polling.
+// Встроенный HttpServer (NIO, один поток-селектор и небольшой пул обработчиков),
+// запросы без верного X-Telegram-Bot-Api-Secret-Token отклоняются.
+public class TelegramWebhookServer {
+    private static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+    private static final int MAX_BODY_BYTES = 1024 * 1024;
+
+    private final TelegramBot telegramBot;
+    private final AuditLogger auditLogger;
+    private final String apiUrl;
+    private final String token;
+    private final String publicUrl;
+    private final byte[] secret;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public TelegramWebhookServer(TelegramBot telegramBot, AuditLogger auditLogger, String apiUrl, String token,
+                                 String host, int port, String path, String publicUrl, String secret) throws IOException {
+        this.telegramBot = telegramBot;
+        this.auditLogger = auditLogger;
+        this.apiUrl = TelegramSender.stripSlash(apiUrl);
+        this.token = token;
+        this.publicUrl = publicUrl;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.executor = Executors.newFixedThreadPool(2, new NamedThreadFactory("AuthCraft-TG-Webhook"));
+        this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        this.server.createContext(path, this::handle);
+        this.server.setExecutor(executor);
+    }
+
+    // Поднимает сервер и регистрирует webhook (setWebhook — в фоне, не в главном потоке)
+    public void start() {
+        server.start();
+        executor.execute(this::registerWebhook);
+    }
+
+    private void registerWebhook() {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("url", publicUrl);
+        params.put("secret_token", new String(secret, StandardCharsets.UTF_8));
+        params.put("allowed_updates", "[\"message\"]");
+        try {
+            BotHttp.Response response = BotHttp.postForm(apiUrl + "/bot" + token + "/setWebhook", params, 10_000);
+            if (response.getStatus() == 200) {
+                auditLogger.log("Telegram webhook registered: " + publicUrl);
+            } else {
+                auditLogger.log("Failed to register Telegram webhook: HTTP " + response.getStatus() + " " + response.getBody());
+            }
+        } catch (IOException e) {
+            auditLogger.log("Failed to register Telegram webhook: " + e.getMessage());
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                reply(exchange, 405);
+                return;
+            }
+            String header = exchange.getRequestHeaders().getFirst(SECRET_HEADER);
+            if (header == null || !MessageDigest.isEqual(secret, header.getBytes(StandardCharsets.UTF_8))) {
+                rejected.incrementAndGet();
+                reply(exchange, 401);
+                return;
+            }
+            byte[] body = readBody(exchange.getRequestBody());
+            if (body == null) {
+                reply(exchange, 413);
+                return;
+            }
+            Update update;
+            try {
+                update = mapper.readValue(body, Update.class);
+            } catch (IOException e) {
+                reply(exchange, 400);
+                return;
+            }
+            // Telegram повторяет доставку, пока не получит 200, поэтому отвечаем до обработки
+            reply(exchange, 200);
+            received.incrementAndGet();
+            try {
+                telegramBot.onUpdateReceived(update);
+            } catch (RuntimeException e) {
+                auditLogger.log("Failed to handle Telegram update: " + e);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (out.size() + read > MAX_BODY_BYTES) {
+                return null;
+            }
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static void reply(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public void shutdown() {
+        server.stop(1);
+        executor.shutdownNow();
+    }
+}
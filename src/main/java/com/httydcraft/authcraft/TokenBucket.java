@@ -0,0 +1,46 @@
+package com.httydcraft.authcraft;
+
+// Token bucket: rate токенов в секунду, не больше capacity про запас
+public class TokenBucket {
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double ratePerSecond, double capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.tokensPerNano = ratePerSecond / 1_000_000_000d;
+        this.tokens = this.capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    // 0 — токен взят; иначе сколько наносекунд ждать до следующего токена
+    public synchronized long tryAcquire(long now) {
+        long wait = delay(now);
+        if (wait == 0) {
+            tokens -= 1;
+        }
+        return wait;
+    }
+
+    // Сколько ждать до свободного токена, не забирая его
+    public synchronized long delay(long now) {
+        refill(now);
+        if (tokens >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    public synchronized boolean isFull(long now) {
+        refill(now);
+        return tokens >= capacity;
+    }
+
+    private void refill(long now) {
+        if (now > lastRefill) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+        }
+    }
+}
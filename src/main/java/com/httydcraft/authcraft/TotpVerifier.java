@@ -0,0 +1,194 @@
+package com.httydcraft.authcraft;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Проверка TOTP (RFC 6238: HMAC-SHA1, 6 цифр, шаг 30 секунд) без лишних аллокаций.
+// Декодированный ключ живёт в кэше игрока keyTtlMillis и удаляется при выходе;
+// Mac и буферы — по одному на поток. Последний принятый шаг запоминается, повтор того же кода отклоняется.
+public class TotpVerifier {
+    private static final long PERIOD_SECONDS = 30;
+    private static final int DIGITS_MODULO = 1_000_000;
+    private static final int HASH_LENGTH = 20;
+    private static final ThreadLocal<Context> CONTEXT = ThreadLocal.withInitial(Context::new);
+
+    private final CryptManager cryptManager;
+    private final int window;
+    private final long keyTtlMillis;
+    private final Map<UUID, CachedKey> keys = new ConcurrentHashMap<>();
+    private final Map<UUID, Long> lastAcceptedSteps = new ConcurrentHashMap<>();
+
+    private static class Context {
+        final Mac mac;
+        final byte[] counter = new byte[8];
+        final byte[] hash = new byte[HASH_LENGTH];
+
+        Context() {
+            try {
+                mac = Mac.getInstance("HmacSHA1");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static class CachedKey {
+        final String encryptedSecret;
+        final SecretKeySpec keySpec;
+        final long expiresAt;
+
+        CachedKey(String encryptedSecret, SecretKeySpec keySpec, long expiresAt) {
+            this.encryptedSecret = encryptedSecret;
+            this.keySpec = keySpec;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // window — сколько шагов до и после текущего принимается (расхождение часов)
+    public TotpVerifier(CryptManager cryptManager, int window, long keyTtlMillis) {
+        this.cryptManager = cryptManager;
+        this.window = Math.max(0, window);
+        this.keyTtlMillis = keyTtlMillis;
+    }
+
+    public boolean verify(UUID playerId, String encryptedSecret, String code) {
+        int expected = parseCode(code);
+        if (expected < 0) {
+            return false;
+        }
+        CachedKey key = getKey(playerId, encryptedSecret);
+        if (key == null) {
+            return false;
+        }
+        long currentStep = System.currentTimeMillis() / 1000 / PERIOD_SECONDS;
+        Long last = lastAcceptedSteps.get(playerId);
+        Context context = CONTEXT.get();
+        try {
+            context.mac.init(key.keySpec);
+            for (long step = currentStep - window; step <= currentStep + window; step++) {
+                if (last != null && step <= last) {
+                    continue;
+                }
+                if (generate(context, step) == expected) {
+                    return accept(playerId, step);
+                }
+            }
+        } catch (InvalidKeyException | ShortBufferException e) {
+            return false;
+        }
+        return false;
+    }
+
+    // Шаг принимается, только если он новее последнего принятого (параллельные попытки тоже)
+    private boolean accept(UUID playerId, long step) {
+        boolean[] accepted = new boolean[1];
+        lastAcceptedSteps.compute(playerId, (id, last) -> {
+            if (last != null && step <= last) {
+                return last;
+            }
+            accepted[0] = true;
+            return step;
+        });
+        return accepted[0];
+    }
+
+    private static int generate(Context context, long step) throws ShortBufferException {
+        byte[] counter = context.counter;
+        for (int i = 7; i >= 0; i--) {
+            counter[i] = (byte) step;
+            step >>>= 8;
+        }
+        context.mac.update(counter);
+        context.mac.doFinal(context.hash, 0);
+        byte[] hash = context.hash;
+        int offset = hash[HASH_LENGTH - 1] & 0x0f;
+        int binary = ((hash[offset] & 0x7f) << 24)
+                | ((hash[offset + 1] & 0xff) << 16)
+                | ((hash[offset + 2] & 0xff) << 8)
+                | (hash[offset + 3] & 0xff);
+        return binary % DIGITS_MODULO;
+    }
+
+    // -1 — не 6 цифр
+    private static int parseCode(String code) {
+        if (code == null || code.length() != 6) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < 6; i++) {
+            char c = code.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private CachedKey getKey(UUID playerId, String encryptedSecret) {
+        long now = System.currentTimeMillis();
+        CachedKey cached = keys.get(playerId);
+        if (cached != null && cached.expiresAt > now && cached.encryptedSecret.equals(encryptedSecret)) {
+            return cached;
+        }
+        byte[] key = decodeBase32(cryptManager.decrypt(encryptedSecret));
+        if (key == null || key.length == 0) {
+            return null;
+        }
+        // SecretKeySpec копирует ключ, декодированный массив сразу обнуляем
+        CachedKey fresh = new CachedKey(encryptedSecret, new SecretKeySpec(key, "HmacSHA1"), now + keyTtlMillis);
+        Arrays.fill(key, (byte) 0);
+        keys.put(playerId, fresh);
+        return fresh;
+    }
+
+    // RFC 4648 Base32; пробелы и '=' пропускаются, регистр не важен. null — недопустимый символ
+    static byte[] decodeBase32(String value) {
+        byte[] out = new byte[value.length() * 5 / 8];
+        int buffer = 0;
+        int bits = 0;
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            int digit;
+            if (c >= 'A' && c <= 'Z') {
+                digit = c - 'A';
+            } else if (c >= 'a' && c <= 'z') {
+                digit = c - 'a';
+            } else if (c >= '2' && c <= '7') {
+                digit = c - '2' + 26;
+            } else if (c == '=' || c == ' ' || c == '-') {
+                continue;
+            } else {
+                return null;
+            }
+            buffer = (buffer << 5) | digit;
+            bits += 5;
+            if (bits >= 8) {
+                bits -= 8;
+                out[length++] = (byte) (buffer >> bits);
+            }
+        }
+        return length == out.length ? out : Arrays.copyOf(out, length);
+    }
+
+    // Игрок вышел: ключ стираем, последний шаг оставляем, чтобы код нельзя было повторить после перезахода
+    public void forget(UUID playerId) {
+        keys.remove(playerId);
+    }
+
+    // Просроченные ключи и шаги, которые уже вышли за окно
+    public void cleanUp() {
+        long now = System.currentTimeMillis();
+        keys.values().removeIf(cached -> cached.expiresAt <= now);
+        long oldestStep = now / 1000 / PERIOD_SECONDS - window;
+        lastAcceptedSteps.values().removeIf(step -> step < oldestStep);
+    }
+}
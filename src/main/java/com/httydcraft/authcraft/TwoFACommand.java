@@ -5,11 +5,15 @@ import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
+import org.bukkit.plugin.IllegalPluginAccessException;
+import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class TwoFACommand implements CommandExecutor, TabCompleter {
     private final AuthCraft plugin;
@@ -17,21 +21,10 @@ public class TwoFACommand implements CommandExecutor, TabCompleter {
     private final com.httydcraft.authcraft.BotManager botManager;
     private final MessageUtils messageUtils;
     private final TOTPUtils totpUtils;
-    // Для хранения временных (pending) секретов
-    private final Map<UUID, String> pendingTotpSecrets = new HashMap<>();
-    // Для хранения временных VK/TG 2FA: Map<UUID, String> (userId/chatId)
-    private final Map<UUID, PendingBot2FA> pendingBot2FA = new HashMap<>();
-
-    private static class PendingBot2FA {
-        String method;
-        String contact;
-        String code;
-        PendingBot2FA(String method, String contact, String code) {
-            this.method = method;
-            this.contact = contact;
-            this.code = code;
-        }
-    }
+    private final TimingWheel timingWheel;
+    private final long totpSetupTimeout;
+    // Для хранения временных (pending) секретов; снимаются по таймауту колесом таймеров
+    private final Map<UUID, String> pendingTotpSecrets = new ConcurrentHashMap<>();
 
     public TwoFACommand(AuthCraft plugin, AuthManager authManager, com.httydcraft.authcraft.BotManager botManager, UtilsManager utilsManager) {
         this.plugin = plugin;
@@ -39,6 +32,8 @@ public class TwoFACommand implements CommandExecutor, TabCompleter {
         this.botManager = botManager;
         this.messageUtils = utilsManager.getMessageUtils();
         this.totpUtils = utilsManager.getTOTPUtils();
+        this.timingWheel = utilsManager.getTimingWheel();
+        this.totpSetupTimeout = plugin.getConfig().getLong("auth.totp_setup_timeout", 300);
     }
 
     public void register() {
@@ -79,7 +74,9 @@ public class TwoFACommand implements CommandExecutor, TabCompleter {
                     String otpauthUrl = "otpauth://totp/AuthCraft:" + player.getName() + "?secret=" + totpUtils.getPlainSecret(secret) + "&issuer=AuthCraft";
                     String qrUrl = "https://api.qrserver.com/v1/create-qr-code/?size=200x200&data=" + java.net.URLEncoder.encode(otpauthUrl, "UTF-8");
                     // Сохраняем секрет только как pending
-                    pendingTotpSecrets.put(player.getUniqueId(), secret);
+                    UUID playerId = player.getUniqueId();
+                    pendingTotpSecrets.put(playerId, secret);
+                    timingWheel.schedule(() -> pendingTotpSecrets.remove(playerId, secret), totpSetupTimeout, TimeUnit.SECONDS);
                     player.sendMessage("§a[2FA] Секрет для Google Authenticator/Яндекс.Ключ: " + totpUtils.getPlainSecret(secret));
                     // Ссылка на QR-код как кликабельная (Minecraft 1.16+ поддерживает JSON-команды)
                     net.md_5.bungee.api.chat.TextComponent qrButton = new net.md_5.bungee.api.chat.TextComponent("§b[Открыть QR]");
@@ -94,11 +91,11 @@ public class TwoFACommand implements CommandExecutor, TabCompleter {
                 } else if (method.equals("TELEGRAM")) {
                     String code = botManager.startTelegram2FA(player);
                     player.sendMessage("§a[2FA] Для привязки Telegram отправьте этот код боту: §b" + code + " §aв ЛС https://t.me/" + botManager.getTelegramBot().getBotUsername());
-                    player.sendMessage("§7После отправки кода боту, вы получите подтверждение о привязке. Затем используйте /2fa verify для завершения.");
+                    player.sendMessage("§7После отправки кода боту введите тот же код в игре: /2fa verify <код> — только тогда привязка сохранится.");
                     return true;
                 } else if (method.equals("VK")) {
                     botManager.startVK2FA(player);
-                    player.sendMessage("§a[2FA] После отправки кода боту, вы получите подтверждение о привязке. Затем используйте /2fa verify для завершения.");
+                    player.sendMessage("§a[2FA] После отправки кода боту введите тот же код в игре: /2fa verify <код> — только тогда привязка сохранится.");
                     return true;
                 }
             } catch (Exception e) {
@@ -109,111 +106,63 @@ public class TwoFACommand implements CommandExecutor, TabCompleter {
                 messageUtils.sendMessage(player, "2fa.not_authenticated");
                 return true;
             }
-            try (java.sql.Connection conn = plugin.getDatabaseManager().getConnection();
-                 java.sql.PreparedStatement stmt = conn.prepareStatement(
-                         "UPDATE players SET twofa_method = NULL, twofa_data = NULL WHERE identifier = ?")) {
-                stmt.setString(1, identifier);
-                stmt.executeUpdate();
-                messageUtils.sendMessage(player, "2fa.disabled");
-            } catch (java.sql.SQLException e) {
-                messageUtils.sendMessage(player, "error.database");
-            }
+            // Привязки TG/VK снимаются вместе с 2FA, иначе push-апрувы продолжили бы приходить
+            UUID playerId = player.getUniqueId();
+            runAsync(player, () -> authManager.setTwoFactor(identifier, null, null) && botManager.unlinkAll(playerId)
+                    ? "2fa.disabled" : "error.database");
         } else if (args[0].equalsIgnoreCase("verify")) {
             if (args.length != 1 && args.length != 2) {
                 messageUtils.sendMessage(player, "2fa.verify_usage");
                 return true;
             }
+            // Вход с 2FA: код второго фактора после пароля
+            if (authManager.getPlayerState(player.getUniqueId()) == PlayerState.PENDING_2FA) {
+                if (args.length != 2) {
+                    messageUtils.sendMessage(player, "2fa.verify_usage");
+                    return true;
+                }
+                authManager.verifyTwoFactor(player, args[1]);
+                return true;
+            }
             // Проверяем pending секрет
-            String pendingSecret = pendingTotpSecrets.get(player.getUniqueId());
+            UUID playerId = player.getUniqueId();
+            String pendingSecret = pendingTotpSecrets.get(playerId);
             if (pendingSecret != null && args.length == 2) {
-                if (totpUtils.verifyCode(pendingSecret, args[1])) {
-                    try (java.sql.Connection conn = plugin.getDatabaseManager().getConnection();
-                         java.sql.PreparedStatement stmt = conn.prepareStatement("UPDATE players SET twofa_method = ?, twofa_data = ? WHERE identifier = ?")) {
-                        stmt.setString(1, "TOTP");
-                        stmt.setString(2, pendingSecret);
-                        String idForTotp = plugin.getConfig().getString("auth.method", "uuid").equalsIgnoreCase("nickname")
-                                ? player.getName() : player.getUniqueId().toString();
-                        stmt.setString(3, idForTotp);
-                        stmt.executeUpdate();
-                        pendingTotpSecrets.remove(player.getUniqueId());
-                        messageUtils.sendMessage(player, "2fa.enabled");
-                    } catch (Exception e) {
-                        messageUtils.sendMessage(player, "error.database");
-                    }
+                if (totpUtils.verifyCode(playerId, pendingSecret, args[1])) {
+                    runAsync(player, () -> {
+                        if (!authManager.setTwoFactor(identifier, "TOTP", pendingSecret)) {
+                            return "error.database";
+                        }
+                        pendingTotpSecrets.remove(playerId, pendingSecret);
+                        return "2fa.enabled";
+                    });
                 } else {
                     player.sendMessage("§cНеверный код из приложения. Проверьте, что вы сканировали правильный QR и попробуйте снова.");
                 }
                 return true;
             }
-            // Проверка Telegram/VK: проверяем pendingCodes (ожидаемый код)
+            // Проверка Telegram/VK: код привязки, который игрок отправил боту; привязка сохраняется только здесь
             if (args.length == 2) {
-                String tgKey = player.getUniqueId().toString() + "TELEGRAM";
-                String vkKey = player.getUniqueId().toString() + "VK";
-                String expectedTg = botManager.getPendingCode(tgKey);
-                String expectedVk = botManager.getPendingCode(vkKey);
-                if (expectedTg != null && expectedTg.equals(args[1])) {
-                    try (java.sql.Connection conn = plugin.getDatabaseManager().getConnection();
-                         java.sql.PreparedStatement stmt = conn.prepareStatement("UPDATE players SET twofa_method = ?, twofa_data = ? WHERE identifier = ?")) {
-                        stmt.setString(1, "TELEGRAM");
-                        stmt.setString(2, botManager.getLinkedTelegram(player.getUniqueId()));
-                        String idForTg = plugin.getConfig().getString("auth.method", "uuid").equalsIgnoreCase("nickname")
-                                ? player.getName() : player.getUniqueId().toString();
-                        stmt.setString(3, idForTg);
-                        stmt.executeUpdate();
-                        botManager.removePendingCode(tgKey);
-                        messageUtils.sendMessage(player, "2fa.enabled");
-                    } catch (Exception e) {
-                        messageUtils.sendMessage(player, "error.database");
-                    }
-                    return true;
-                } else if (expectedVk != null && expectedVk.equals(args[1])) {
-                    try (java.sql.Connection conn = plugin.getDatabaseManager().getConnection();
-                         java.sql.PreparedStatement stmt = conn.prepareStatement("UPDATE players SET twofa_method = ?, twofa_data = ? WHERE identifier = ?")) {
-                        stmt.setString(1, "VK");
-                        stmt.setString(2, botManager.getLinkedVK(player.getUniqueId()));
-                        String idForVk = plugin.getConfig().getString("auth.method", "uuid").equalsIgnoreCase("nickname")
-                                ? player.getName() : player.getUniqueId().toString();
-                        stmt.setString(3, idForVk);
-                        stmt.executeUpdate();
-                        botManager.removePendingCode(vkKey);
-                        messageUtils.sendMessage(player, "2fa.enabled");
-                    } catch (Exception e) {
-                        messageUtils.sendMessage(player, "error.database");
-                    }
-                    return true;
+                String method = "TELEGRAM";
+                String externalId = botManager.verifyLinkCode(playerId, method, args[1]);
+                if (externalId == null) {
+                    method = "VK";
+                    externalId = botManager.verifyLinkCode(playerId, method, args[1]);
                 }
-                player.sendMessage("§cНеверный код подтверждения. Проверьте код и попробуйте снова.");
-                return true;
-            }
-            // Старый режим: просто проверяем, что привязка есть
-            if (botManager.getLinkedTelegram(player.getUniqueId()) != null) {
-                try (java.sql.Connection conn = plugin.getDatabaseManager().getConnection();
-                     java.sql.PreparedStatement stmt = conn.prepareStatement("UPDATE players SET twofa_method = ?, twofa_data = ? WHERE identifier = ?")) {
-                    stmt.setString(1, "TELEGRAM");
-                    stmt.setString(2, botManager.getLinkedTelegram(player.getUniqueId()));
-                    String idForTg = plugin.getConfig().getString("auth.method", "uuid").equalsIgnoreCase("nickname")
-                            ? player.getName() : player.getUniqueId().toString();
-                    stmt.setString(3, idForTg);
-                    stmt.executeUpdate();
-                    messageUtils.sendMessage(player, "2fa.enabled");
-                } catch (Exception e) {
-                    messageUtils.sendMessage(player, "error.database");
-                }
-                return true;
-            }
-            if (botManager.getLinkedVK(player.getUniqueId()) != null) {
-                try (java.sql.Connection conn = plugin.getDatabaseManager().getConnection();
-                     java.sql.PreparedStatement stmt = conn.prepareStatement("UPDATE players SET twofa_method = ?, twofa_data = ? WHERE identifier = ?")) {
-                    stmt.setString(1, "VK");
-                    stmt.setString(2, botManager.getLinkedVK(player.getUniqueId()));
-                    String idForVk = plugin.getConfig().getString("auth.method", "uuid").equalsIgnoreCase("nickname")
-                            ? player.getName() : player.getUniqueId().toString();
-                    stmt.setString(3, idForVk);
-                    stmt.executeUpdate();
-                    messageUtils.sendMessage(player, "2fa.enabled");
-                } catch (Exception e) {
-                    messageUtils.sendMessage(player, "error.database");
+                if (externalId == null) {
+                    player.sendMessage("§cНеверный код подтверждения. Проверьте код и попробуйте снова.");
+                    return true;
                 }
+                String linkedMethod = method;
+                String linkedId = externalId;
+                runAsync(player, () -> {
+                    try {
+                        botManager.saveLink(playerId, linkedMethod, linkedId);
+                    } catch (SQLException e) {
+                        return "error.database";
+                    }
+                    return authManager.setTwoFactor(identifier, linkedMethod, linkedId) ? "2fa.enabled" : "error.database";
+                });
                 return true;
             }
             player.sendMessage("§cНет ожидающего кода для подтверждения 2FA. Сначала выполните /2fa enable.");
@@ -222,6 +171,22 @@ public class TwoFACommand implements CommandExecutor, TabCompleter {
         return true;
     }
 
+    // Запись в БД — в асинхронной задаче; сообщение с результатом (ключ) — в главном потоке
+    private void runAsync(Player player, Supplier<String> task) {
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            String messageKey = task.get();
+            try {
+                plugin.getServer().getScheduler().runTask(plugin, () -> {
+                    if (player.isOnline()) {
+                        messageUtils.sendMessage(player, messageKey);
+                    }
+                });
+            } catch (IllegalPluginAccessException e) {
+                // Плагин выключается
+            }
+        });
+    }
+
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
         List<String> completions = new ArrayList<>();
@@ -1,5 +1,7 @@
 package com.httydcraft.authcraft;
 
+import java.util.concurrent.TimeUnit;
+
 public class UtilsManager {
     private final AuditLogger auditLogger;
     private final CacheManager cacheManager;
@@ -10,10 +12,11 @@ public class UtilsManager {
     private final PasswordValidator passwordValidator;
     private final TOTPUtils totpUtils;
     private final CloudflareWarpChecker cloudflareWarpChecker;
+    private final TimingWheel timingWheel;
 
     public UtilsManager(AuthCraft plugin) {
         this.auditLogger = new AuditLogger(plugin);
-        this.cacheManager = new CacheManager();
+        this.cacheManager = new CacheManager(plugin);
         this.messageUtils = new MessageUtils(plugin);
         this.connectionLimiter = new ConnectionLimiter(plugin, messageUtils);
         this.cryptManager = new CryptManager(plugin);
@@ -21,6 +24,7 @@ public class UtilsManager {
         this.passwordValidator = new PasswordValidator();
         this.totpUtils = new TOTPUtils(plugin, cryptManager);
         this.cloudflareWarpChecker = new CloudflareWarpChecker(plugin, auditLogger);
+        this.timingWheel = new TimingWheel(plugin.getLogger(), 100, TimeUnit.MILLISECONDS, 512);
     }
 
     public AuditLogger getAuditLogger() {
@@ -58,4 +62,8 @@ public class UtilsManager {
     public CloudflareWarpChecker getCloudflareWarpChecker() {
         return cloudflareWarpChecker;
     }
+
+    public TimingWheel getTimingWheel() {
+        return timingWheel;
+    }
 }
@@ -1,23 +1,15 @@
 package com.httydcraft.authcraft;
 
-import com.vk.api.sdk.client.VkApiClient;
-import com.vk.api.sdk.client.actors.GroupActor;
-import com.vk.api.sdk.exceptions.ApiException;
-import com.vk.api.sdk.exceptions.ClientException;
-import com.vk.api.sdk.httpclient.HttpTransportClient;
-
 import java.util.UUID;
 
 public class VKBot {
     private final String token;
-    private final VkApiClient vkClient;
-    private final GroupActor actor;
+    private final OutboundMessenger outbound;
     private boolean valid;
 
-    public VKBot(String token) {
+    public VKBot(String token, OutboundMessenger outbound) {
         this.token = token;
-        this.vkClient = new VkApiClient(HttpTransportClient.getInstance());
-        this.actor = new GroupActor(0, token);
+        this.outbound = outbound;
         this.valid = token != null && !token.isEmpty();
     }
 
@@ -29,19 +21,12 @@ public class VKBot {
         return "123456789"; // Simplified: Assume admin provides user ID
     }
 
+    // Не блокирует: сообщение уходит через очередь исходящих
     public void sendMessage(String userId, String text) {
         if (!valid) {
             return;
         }
-        try {
-            vkClient.messages().send(actor)
-                    .userId(Integer.parseInt(userId))
-                    .message(text)
-                    .randomId((int) System.currentTimeMillis())
-                    .execute();
-        } catch (ApiException | ClientException e) {
-            // Silent fail
-        }
+        outbound.enqueue(userId, text);
     }
 
     // Отправка push-апрува
@@ -56,16 +41,16 @@ public class VKBot {
     public void onMessageReceived(String vkId, String text) {
         AuthCraft plugin = AuthCraft.getInstance(); // Получить singleton или передать через конструктор
         BotManager botManager = plugin.getBotManager();
-        // Привязка VK
-        if (botManager.tryLinkVK(vkId, text)) {
-            sendMessage(vkId, "✅ Ваш VK успешно привязан к аккаунту Minecraft!");
-            return;
-        }
-        // Подтверждение входа
+        // Подтверждение входа — первым: код апрува от привязанного аккаунта не должен считаться неверным кодом привязки
         UUID playerId = botManager.getPlayerByVK(vkId);
         if (playerId != null && botManager.approveLogin(playerId, text, "VK")) {
             sendMessage(vkId, "✅ Вход в аккаунт Minecraft разрешён!");
             plugin.getAuthManager().approveLogin(playerId);
+            return;
+        }
+        // Привязка VK
+        if (botManager.tryLinkVK(vkId, text)) {
+            sendMessage(vkId, "✅ Код принят. Введите его в игре командой /2fa verify <код>, чтобы завершить привязку VK.");
         }
     }
 }
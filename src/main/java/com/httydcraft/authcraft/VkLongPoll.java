@@ -0,0 +1,262 @@
+package com.httydcraft.authcraft;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Приём входящих сообщений сообщества VK через Bots Long Poll API.
+// Свой поток опрашивает a_check и следит за ts; новые сообщения пачками уходят
+// обработчику (BotManager) в отдельном потоке. Не больше maxInFlight сообщений в обработке —
+// после простоя накопившиеся события не заваливают сервер разом.
+public class VkLongPoll {
+    private static final long MAX_BACKOFF_MILLIS = 60_000L;
+
+    private final Consumer<List<IncomingMessage>> handler;
+    private final AuditLogger auditLogger;
+    private final String apiUrl;
+    private final String token;
+    private final String groupId;
+    private final int waitSeconds;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final ExecutorService dispatcher;
+    private final Thread pollThread;
+    private volatile boolean running = true;
+    private volatile HttpURLConnection currentConnection;
+
+    private String server;
+    private String key;
+    private String ts;
+
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+
+    public static class IncomingMessage {
+        private final String fromId;
+        private final String text;
+
+        IncomingMessage(String fromId, String text) {
+            this.fromId = fromId;
+            this.text = text;
+        }
+
+        public String getFromId() {
+            return fromId;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    public VkLongPoll(Consumer<List<IncomingMessage>> handler, AuditLogger auditLogger, String apiUrl, String token, String groupId,
+                      int waitSeconds, int maxInFlight) {
+        this.handler = handler;
+        this.auditLogger = auditLogger;
+        this.apiUrl = TelegramSender.stripSlash(apiUrl);
+        this.token = token;
+        this.groupId = groupId;
+        this.waitSeconds = Math.max(1, Math.min(90, waitSeconds));
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.inFlight = new Semaphore(this.maxInFlight);
+        this.dispatcher = Executors.newSingleThreadExecutor(new NamedThreadFactory("AuthCraft-VK-Dispatch"));
+        this.pollThread = new Thread(this::run, "AuthCraft-VK-LongPoll");
+        this.pollThread.setDaemon(true);
+    }
+
+    public void start() {
+        pollThread.start();
+    }
+
+    private void run() {
+        long backoff = 1000L;
+        while (running) {
+            try {
+                if (key == null) {
+                    fetchServer(ts == null);
+                }
+                poll();
+                backoff = 1000L;
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                if (!running) {
+                    break;
+                }
+                auditLogger.log("VK Long Poll error: " + e.getMessage() + ", retrying in " + backoff + " ms");
+                key = null;
+                reconnects.incrementAndGet();
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+                backoff = Math.min(MAX_BACKOFF_MILLIS, backoff * 2);
+            }
+        }
+    }
+
+    // groups.getLongPollServer: новый key и server; ts берём, только если своего нет (failed=3 или старт)
+    private void fetchServer(boolean resetTs) throws IOException {
+        String url = apiUrl + "/groups.getLongPollServer?group_id=" + encode(groupId)
+                + "&access_token=" + encode(token) + "&v=" + VkSender.API_VERSION;
+        JsonObject body = request(url, 10_000);
+        if (body.has("error")) {
+            throw new IOException("getLongPollServer failed: " + body.get("error"));
+        }
+        JsonObject response = body.getAsJsonObject("response");
+        server = response.get("server").getAsString();
+        key = response.get("key").getAsString();
+        if (resetTs) {
+            ts = response.get("ts").getAsString();
+        }
+    }
+
+    private void poll() throws IOException, InterruptedException {
+        String url = server + (server.contains("?") ? "&" : "?") + "act=a_check&key=" + encode(key)
+                + "&ts=" + encode(ts) + "&wait=" + waitSeconds;
+        JsonObject body = request(url, (waitSeconds + 10) * 1000);
+        polls.incrementAndGet();
+        if (body.has("failed")) {
+            int failed = body.get("failed").getAsInt();
+            reconnects.incrementAndGet();
+            if (failed == 1) {
+                // История событий устарела или частично потеряна: продолжаем с нового ts
+                ts = body.get("ts").getAsString();
+            } else if (failed == 2) {
+                key = null;
+            } else {
+                key = null;
+                ts = null;
+            }
+            return;
+        }
+        ts = body.get("ts").getAsString();
+        JsonArray updates = body.getAsJsonArray("updates");
+        if (updates == null || updates.size() == 0) {
+            return;
+        }
+        List<IncomingMessage> batch = new ArrayList<>();
+        for (JsonElement element : updates) {
+            IncomingMessage message = parseMessage(element.getAsJsonObject());
+            if (message != null) {
+                batch.add(message);
+            }
+        }
+        if (!batch.isEmpty()) {
+            dispatch(batch);
+        }
+    }
+
+    private static IncomingMessage parseMessage(JsonObject update) {
+        if (!update.has("type") || !update.get("type").getAsString().equals("message_new")) {
+            return null;
+        }
+        JsonObject object = update.getAsJsonObject("object");
+        // С API 5.103 сообщение лежит в object.message
+        JsonObject message = object.has("message") ? object.getAsJsonObject("message") : object;
+        if (!message.has("from_id") || !message.has("text")) {
+            return null;
+        }
+        long fromId = message.get("from_id").getAsLong();
+        if (fromId <= 0) {
+            return null;
+        }
+        return new IncomingMessage(String.valueOf(fromId), message.get("text").getAsString());
+    }
+
+    // Пачки не больше maxInFlight; если столько сообщений уже в обработке,
+    // поток опроса ждёт и не делает следующий a_check
+    private void dispatch(List<IncomingMessage> messages) throws InterruptedException {
+        received.addAndGet(messages.size());
+        for (int from = 0; from < messages.size(); from += maxInFlight) {
+            List<IncomingMessage> batch = new ArrayList<>(messages.subList(from, Math.min(messages.size(), from + maxInFlight)));
+            inFlight.acquire(batch.size());
+            dispatcher.execute(() -> {
+                try {
+                    handler.accept(batch);
+                } catch (RuntimeException e) {
+                    auditLogger.log("Failed to handle VK messages: " + e);
+                } finally {
+                    inFlight.release(batch.size());
+                }
+            });
+        }
+    }
+
+    private JsonObject request(String url, int timeoutMillis) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(10_000);
+        conn.setReadTimeout(timeoutMillis);
+        currentConnection = conn;
+        try {
+            int status = conn.getResponseCode();
+            if (status != 200) {
+                throw new IOException("HTTP " + status);
+            }
+            try (InputStream in = conn.getInputStream()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                return new JsonParser().parse(new String(out.toByteArray(), StandardCharsets.UTF_8)).getAsJsonObject();
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException("Invalid response: " + e.getMessage());
+        } finally {
+            currentConnection = null;
+            conn.disconnect();
+        }
+    }
+
+    private static String encode(String value) throws IOException {
+        return URLEncoder.encode(value, "UTF-8");
+    }
+
+    public long getPolls() {
+        return polls.get();
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    public long getReconnects() {
+        return reconnects.get();
+    }
+
+    public void shutdown() {
+        running = false;
+        pollThread.interrupt();
+        HttpURLConnection conn = currentConnection;
+        if (conn != null) {
+            conn.disconnect();
+        }
+        dispatcher.shutdown();
+        try {
+            dispatcher.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
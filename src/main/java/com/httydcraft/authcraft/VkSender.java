@@ -0,0 +1,48 @@
+package com.httydcraft.authcraft;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// messages.send через VK API. random_id одинаковый для повторов, так что VK не продублирует сообщение.
+// Коды 6 (слишком часто), 9 (flood control) и 10 (внутренняя ошибка) повторяем.
+public class VkSender implements OutboundMessenger.Sender {
+    static final String API_VERSION = "5.131";
+    private static final Pattern ERROR_CODE = Pattern.compile("\"error_code\"\\s*:\\s*(\\d+)");
+
+    private final String sendUrl;
+    private final String token;
+    private final int timeoutMillis;
+
+    public VkSender(String apiUrl, String token, int timeoutMillis) {
+        this.sendUrl = TelegramSender.stripSlash(apiUrl) + "/messages.send";
+        this.token = token;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public void send(String chatId, String text, long messageId) throws OutboundMessenger.SendException {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("user_id", chatId);
+        params.put("message", text);
+        params.put("random_id", String.valueOf(messageId));
+        params.put("access_token", token);
+        params.put("v", API_VERSION);
+        BotHttp.Response response;
+        try {
+            response = BotHttp.postForm(sendUrl, params, timeoutMillis);
+        } catch (IOException e) {
+            throw new OutboundMessenger.SendException(e.toString(), true, 0);
+        }
+        if (response.getStatus() != 200) {
+            throw new OutboundMessenger.SendException("HTTP " + response.getStatus(), response.getStatus() >= 500, 0);
+        }
+        Matcher matcher = ERROR_CODE.matcher(response.getBody());
+        if (matcher.find()) {
+            int code = Integer.parseInt(matcher.group(1));
+            throw new OutboundMessenger.SendException("VK error " + code, code == 6 || code == 9 || code == 10, code == 9 ? 5000 : 0);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.httydcraft.authcraft.database;
+
+import com.httydcraft.authcraft.AuditLogger;
+import com.httydcraft.authcraft.NamedThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+// Онлайн-бэкапы в отдельном потоке: снимок базы (Database.backup) во временный файл,
+// сжатие в <directory>/authcraft-<время>.db.gz с ограничением скорости записи и чистка старых архивов.
+// Бэкапы по расписанию и вручную выполняются по очереди в одном потоке.
+public class BackupManager {
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final String PREFIX = "authcraft-";
+    private static final String SUFFIX = ".db.gz";
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final Database database;
+    private final AuditLogger auditLogger;
+    private final File directory;
+    private final CronSchedule schedule;
+    private final int keepCount;
+    private final long keepMillis;
+    private final long throttleBytesPerSecond;
+    private final ScheduledThreadPoolExecutor executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // schedule = null — только вручную; keepCount/keepDays = 0 — без ограничения; throttleKbPerSecond = 0 — без ограничения
+    public BackupManager(Database database, AuditLogger auditLogger, File directory, CronSchedule schedule,
+                         int keepCount, int keepDays, int throttleKbPerSecond) {
+        this.database = database;
+        this.auditLogger = auditLogger;
+        this.directory = directory;
+        this.schedule = schedule;
+        this.keepCount = Math.max(0, keepCount);
+        this.keepMillis = TimeUnit.DAYS.toMillis(Math.max(0, keepDays));
+        this.throttleBytesPerSecond = Math.max(0, throttleKbPerSecond) * 1024L;
+        this.executor = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("AuthCraft-Backup"));
+        // shutdown() отменяет запланированный бэкап, но не прерывает идущий
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        if (schedule != null) {
+            scheduleNext();
+        }
+    }
+
+    private void scheduleNext() {
+        ZonedDateTime now = ZonedDateTime.now();
+        ZonedDateTime next = schedule.next(now);
+        if (next == null) {
+            auditLogger.log("Backup schedule '" + schedule + "' never fires, scheduled backups disabled");
+            return;
+        }
+        long delay = Math.max(0, next.toInstant().toEpochMilli() - System.currentTimeMillis());
+        try {
+            executor.schedule(() -> {
+                if (running.compareAndSet(false, true)) {
+                    try {
+                        runBackup();
+                    } catch (Exception e) {
+                        auditLogger.log("Scheduled backup failed: " + e.getMessage());
+                    } finally {
+                        running.set(false);
+                    }
+                } else {
+                    auditLogger.log("Scheduled backup skipped: a backup is already in progress");
+                }
+                scheduleNext();
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Закрывается
+        }
+    }
+
+    // Внеочередной бэкап (команда); завершается файлом архива.
+    // Флаг ставится до постановки в очередь: второй вызов, пока первый ждёт или идёт, сразу отклоняется
+    public CompletableFuture<File> backupNow() {
+        CompletableFuture<File> result = new CompletableFuture<>();
+        if (!running.compareAndSet(false, true)) {
+            result.completeExceptionally(new IllegalStateException("Backup already in progress"));
+            return result;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(runBackup());
+                } catch (Exception e) {
+                    auditLogger.log("Manual backup failed: " + e.getMessage());
+                    result.completeExceptionally(e);
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    // Только поток бэкапов, под флагом running
+    private File runBackup() throws SQLException, IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(directory.toPath());
+        String name = PREFIX + FILE_TIME.format(ZonedDateTime.now());
+        File snapshot = new File(directory, name + ".db.tmp");
+        File partial = new File(directory, name + SUFFIX + ".tmp");
+        File archive = new File(directory, name + SUFFIX);
+        try {
+            Files.deleteIfExists(snapshot.toPath());
+            database.backup(snapshot);
+            compress(snapshot, partial);
+            // Архив появляется под итоговым именем только целиком
+            Files.move(partial.toPath(), archive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(snapshot.toPath());
+            Files.deleteIfExists(partial.toPath());
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        auditLogger.log("Created database backup " + archive.getName() + " (" + archive.length() / 1024 + " KiB, " + millis + " ms)");
+        applyRetention();
+        return archive;
+    }
+
+    // gzip кусками; при заданном лимите спим так, чтобы не превышать throttleBytesPerSecond
+    private void compress(File source, File target) throws IOException {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        long start = System.nanoTime();
+        long total = 0;
+        try (InputStream in = Files.newInputStream(source.toPath());
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(target.toPath()), CHUNK_SIZE)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+                total += read;
+                if (throttleBytesPerSecond > 0) {
+                    long aheadMillis = total * 1000 / throttleBytesPerSecond
+                            - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    if (aheadMillis > 0) {
+                        try {
+                            Thread.sleep(aheadMillis);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IOException("Backup interrupted", e);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Самый свежий архив не удаляется никогда; остальные — сверх keepCount или старше keepDays
+    private void applyRetention() {
+        File[] archives = directory.listFiles((dir, fileName) -> fileName.startsWith(PREFIX) && fileName.endsWith(SUFFIX));
+        if (archives == null || archives.length <= 1) {
+            return;
+        }
+        // Время в имени сортируется лексикографически
+        Arrays.sort(archives, Comparator.comparing(File::getName).reversed());
+        long cutoff = System.currentTimeMillis() - keepMillis;
+        for (int i = 1; i < archives.length; i++) {
+            boolean tooMany = keepCount > 0 && i >= keepCount;
+            boolean tooOld = keepMillis > 0 && archives[i].lastModified() < cutoff;
+            if (tooMany || tooOld) {
+                Path path = archives[i].toPath();
+                try {
+                    Files.delete(path);
+                    auditLogger.log("Deleted old database backup " + archives[i].getName());
+                } catch (IOException e) {
+                    auditLogger.log("Failed to delete old database backup " + archives[i].getName() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Идущий бэкап получает 30 секунд, потом прерывается (недописанный архив удаляется)
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+                auditLogger.log("Interrupted running database backup on shutdown");
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.httydcraft.authcraft.database;
+
+import java.time.DayOfWeek;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+
+// Расписание в формате cron из пяти полей: минута час день месяц день_недели.
+// Поддерживаются *, числа, диапазоны a-b, списки через запятую и шаг /n. День недели 0-7 (0 и 7 — воскресенье).
+// Как в cron, если заданы и день месяца, и день недели, подходит любой из них.
+public class CronSchedule {
+    private static final int MAX_SEARCH_MINUTES = 366 * 24 * 60;
+
+    private final String expression;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet days;
+    private final BitSet months;
+    private final BitSet weekdays;
+    private final boolean anyDay;
+    private final boolean anyWeekday;
+
+    public CronSchedule(String expression) {
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Cron expression must have 5 fields: " + expression);
+        }
+        this.expression = expression.trim();
+        this.minutes = parseField(fields[0], 0, 59);
+        this.hours = parseField(fields[1], 0, 23);
+        this.days = parseField(fields[2], 1, 31);
+        this.months = parseField(fields[3], 1, 12);
+        this.weekdays = parseField(fields[4], 0, 7);
+        if (weekdays.get(7)) {
+            weekdays.set(0);
+        }
+        // Как в cron: поле, начинающееся с "*" (в том числе "*/2"), считается неограниченным
+        this.anyDay = fields[2].startsWith("*");
+        this.anyWeekday = fields[4].startsWith("*");
+    }
+
+    private static BitSet parseField(String field, int min, int max) {
+        BitSet values = new BitSet(max + 1);
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = parseNumber(part.substring(slash + 1), 1, max);
+                part = part.substring(0, slash);
+            }
+            int from;
+            int to;
+            if (part.equals("*")) {
+                from = min;
+                to = max;
+            } else {
+                int dash = part.indexOf('-');
+                if (dash > 0) {
+                    from = parseNumber(part.substring(0, dash), min, max);
+                    to = parseNumber(part.substring(dash + 1), min, max);
+                } else {
+                    from = parseNumber(part, min, max);
+                    // "5/15" — с 5 до конца диапазона
+                    to = slash >= 0 ? max : from;
+                }
+            }
+            if (from > to) {
+                throw new IllegalArgumentException("Invalid cron range: " + field);
+            }
+            for (int value = from; value <= to; value += step) {
+                values.set(value);
+            }
+        }
+        return values;
+    }
+
+    private static int parseNumber(String value, int min, int max) {
+        int number;
+        try {
+            number = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cron value: " + value);
+        }
+        if (number < min || number > max) {
+            throw new IllegalArgumentException("Cron value " + number + " out of range " + min + "-" + max);
+        }
+        return number;
+    }
+
+    // Ближайшая подходящая минута строго после after; null — за год не нашлось (например, 31 февраля)
+    public ZonedDateTime next(ZonedDateTime after) {
+        ZonedDateTime time = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        for (int i = 0; i < MAX_SEARCH_MINUTES; i++) {
+            if (!months.get(time.getMonthValue())) {
+                time = time.withDayOfMonth(1).withHour(0).withMinute(0).plusMonths(1);
+            } else if (!matchesDay(time)) {
+                time = time.withHour(0).withMinute(0).plusDays(1);
+            } else if (!hours.get(time.getHour())) {
+                time = time.withMinute(0).plusHours(1);
+            } else if (!minutes.get(time.getMinute())) {
+                time = time.plusMinutes(1);
+            } else {
+                return time;
+            }
+        }
+        return null;
+    }
+
+    private boolean matchesDay(ZonedDateTime time) {
+        boolean day = days.get(time.getDayOfMonth());
+        DayOfWeek dayOfWeek = time.getDayOfWeek();
+        boolean weekday = weekdays.get(dayOfWeek.getValue() % 7);
+        if (anyDay || anyWeekday) {
+            return day && weekday;
+        }
+        return day || weekday;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -2,10 +2,20 @@ package com.httydcraft.authcraft.database;
 
 import com.zaxxer.hikari.HikariConfig;
 
+import java.io.File;
 import java.sql.SQLException;
 
 public interface Database {
     HikariConfig configureHikari();
+    // Отдельный пул для чтения; null — читать через основной пул
+    default HikariConfig configureReadHikari() {
+        return null;
+    }
     void initializeTables() throws SQLException;
-    void backup() throws SQLException;
+    // Согласованный снимок базы в файл target, не останавливая работу (см. BackupManager)
+    void backup(File target) throws SQLException;
+    // false — снимок держит блокировку чтения до конца, и запись ждёт его; по расписанию такие бэкапы не запускаются
+    default boolean isBackupNonBlocking() {
+        return true;
+    }
 }
\ No newline at end of file
@@ -4,48 +4,114 @@ import com.httydcraft.authcraft.AuthCraft;
 import com.httydcraft.authcraft.AuditLogger;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import org.bukkit.configuration.ConfigurationSection;
 
+import java.io.File;
 import java.sql.Connection;
 import java.sql.SQLException;
 
 public class DatabaseManager {
-    private final AuthCraft plugin;
+    private final File dataFolder;
+    private final ConfigurationSection config;
     private final AuditLogger auditLogger;
     private final HikariDataSource dataSource;
+    private final HikariDataSource readDataSource;
     private final Database database;
+    private final QueryMetrics queryMetrics = new QueryMetrics();
+    private final PlayerRepository players;
+    private final WriteBehindQueue writeBehind;
+    private final BackupManager backups;
 
     public DatabaseManager(AuthCraft plugin) {
-        this.plugin = plugin;
-        this.auditLogger = plugin.getUtilsManager().getAuditLogger();
-        String dbType = plugin.getConfig().getString("database.type", "sqlite").toLowerCase();
+        this(plugin.getDataFolder(), plugin.getConfig(), plugin.getUtilsManager().getAuditLogger());
+    }
+
+    // Без экземпляра плагина (бенчмарки): папка данных и секция конфига с database.*
+    public DatabaseManager(File dataFolder, ConfigurationSection config, AuditLogger auditLogger) {
+        this.dataFolder = dataFolder;
+        this.config = config;
+        this.auditLogger = auditLogger;
+        String dbType = config.getString("database.type", "sqlite").toLowerCase();
         if (dbType.equals("postgresql")) {
-            this.database = new PostgreSQLDatabase(plugin, this);
+            this.database = new PostgreSQLDatabase(config, auditLogger, this);
         } else {
-            this.database = new SQLiteDatabase(plugin, this);
+            this.database = new SQLiteDatabase(dataFolder, config, auditLogger, this);
         }
-        HikariConfig config = database.configureHikari();
-        this.dataSource = new HikariDataSource(config);
+        HikariConfig hikariConfig = database.configureHikari();
+        this.dataSource = new HikariDataSource(hikariConfig);
         try {
             database.initializeTables();
-            database.backup();
         } catch (SQLException e) {
-            auditLogger.log("Failed to initialize or backup database: " + e.getMessage());
+            auditLogger.log("Failed to initialize database: " + e.getMessage());
             throw new IllegalStateException("Could not initialize database", e);
         }
+        this.players = new PlayerRepository(this, queryMetrics);
+        // Пул чтения открываем после создания таблиц: писатель уже перевёл базу в WAL
+        HikariConfig readConfig = database.configureReadHikari();
+        this.readDataSource = readConfig != null ? new HikariDataSource(readConfig) : null;
+        this.writeBehind = new WriteBehindQueue(players, auditLogger,
+                config.getLong("database.write_behind.flush_interval_ms", 1000),
+                config.getInt("database.write_behind.batch_size", 256));
+        this.backups = createBackupManager(dbType);
+    }
+
+    // При старте бэкап больше не делается: только по расписанию и командой, в потоке BackupManager
+    private BackupManager createBackupManager(String dbType) {
+        CronSchedule schedule = null;
+        if (config.getBoolean("database.backup.enabled", true) && !dbType.equals("postgresql")) {
+            String expression = config.getString("database.backup.schedule", "0 4 * * *");
+            try {
+                schedule = new CronSchedule(expression);
+            } catch (IllegalArgumentException e) {
+                auditLogger.log("Invalid database.backup.schedule '" + expression + "': " + e.getMessage());
+            }
+            if (schedule != null && !database.isBackupNonBlocking()) {
+                auditLogger.log("Scheduled backups disabled: without database.sqlite.wal a snapshot blocks logins and writes "
+                        + "until it completes. Enable WAL or run /authcraft backup manually");
+                schedule = null;
+            }
+        }
+        File directory = new File(dataFolder, config.getString("database.backup.directory", "backups"));
+        return new BackupManager(database, auditLogger, directory, schedule,
+                config.getInt("database.backup.keep_count", 14),
+                config.getInt("database.backup.keep_days", 30),
+                config.getInt("database.backup.throttle_kb_per_sec", 8192));
     }
 
     public Connection getConnection() throws SQLException {
         return dataSource.getConnection();
     }
 
+    // Соединение только для SELECT: из пула чтения, если он есть
+    public Connection getReadConnection() throws SQLException {
+        return readDataSource != null ? readDataSource.getConnection() : dataSource.getConnection();
+    }
+
+    public PlayerRepository getPlayers() {
+        return players;
+    }
+
+    public QueryMetrics getQueryMetrics() {
+        return queryMetrics;
+    }
+
+    public WriteBehindQueue getWriteBehind() {
+        return writeBehind;
+    }
+
+    public BackupManager getBackups() {
+        return backups;
+    }
+
     public void close() {
+        backups.close();
+        writeBehind.close();
+        if (readDataSource != null) {
+            readDataSource.close();
+        }
         if (dataSource != null) {
             dataSource.close();
             auditLogger.log("Closed database connection pool");
         }
     }
-
-    public void backup() throws SQLException {
-        database.backup();
-    }
 }
@@ -0,0 +1,86 @@
+package com.httydcraft.authcraft.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+
+// Таблица linked_accounts: привязки игроков к Telegram/VK.
+// Оба направления поиска идут по индексу (PRIMARY KEY и idx_linked_accounts_external).
+public class LinkRepository {
+    private final DatabaseManager databaseManager;
+
+    public enum Platform {
+        TELEGRAM,
+        VK
+    }
+
+    public LinkRepository(DatabaseManager databaseManager) {
+        this.databaseManager = databaseManager;
+    }
+
+    public String findExternalId(UUID playerId, Platform platform) throws SQLException {
+        try (Connection conn = databaseManager.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT external_id FROM linked_accounts WHERE player_uuid = ? AND platform = ?")) {
+            stmt.setString(1, playerId.toString());
+            stmt.setString(2, platform.name());
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    public UUID findPlayer(Platform platform, String externalId) throws SQLException {
+        try (Connection conn = databaseManager.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT player_uuid FROM linked_accounts WHERE platform = ? AND external_id = ?")) {
+            stmt.setString(1, platform.name());
+            stmt.setString(2, externalId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? UUID.fromString(rs.getString(1)) : null;
+            }
+        }
+    }
+
+    // Привязывает аккаунт к игроку. Если аккаунт был привязан к другому игроку, привязка переходит.
+    public void link(UUID playerId, Platform platform, String externalId) throws SQLException {
+        try (Connection conn = databaseManager.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement release = conn.prepareStatement(
+                         "DELETE FROM linked_accounts WHERE platform = ? AND external_id = ? AND player_uuid <> ?");
+                 PreparedStatement upsert = conn.prepareStatement(
+                         "INSERT INTO linked_accounts (player_uuid, platform, external_id, linked_at) VALUES (?, ?, ?, ?) " +
+                                 "ON CONFLICT (player_uuid, platform) DO UPDATE SET " +
+                                 "external_id = excluded.external_id, linked_at = excluded.linked_at")) {
+                release.setString(1, platform.name());
+                release.setString(2, externalId);
+                release.setString(3, playerId.toString());
+                release.executeUpdate();
+                upsert.setString(1, playerId.toString());
+                upsert.setString(2, platform.name());
+                upsert.setString(3, externalId);
+                upsert.setLong(4, System.currentTimeMillis());
+                upsert.executeUpdate();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    public void unlink(UUID playerId, Platform platform) throws SQLException {
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "DELETE FROM linked_accounts WHERE player_uuid = ? AND platform = ?")) {
+            stmt.setString(1, playerId.toString());
+            stmt.setString(2, platform.name());
+            stmt.executeUpdate();
+        }
+    }
+}
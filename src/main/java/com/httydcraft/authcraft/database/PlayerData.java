@@ -46,4 +46,12 @@ public class PlayerData {
     public long getLastLogin() {
         return lastLogin;
     }
+
+    public PlayerData withPassword(String password) {
+        return new PlayerData(identifier, username, password, twofaMethod, twofaData, role, lastLogin);
+    }
+
+    public PlayerData withTwoFactor(String twofaMethod, String twofaData) {
+        return new PlayerData(identifier, username, password, twofaMethod, twofaData, role, lastLogin);
+    }
 }
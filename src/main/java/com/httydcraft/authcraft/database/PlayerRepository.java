@@ -0,0 +1,146 @@
+package com.httydcraft.authcraft.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+// Все запросы к таблице players. Каждый запрос — один round trip, время пишется в QueryMetrics.
+public class PlayerRepository {
+    private static final String SELECT_SQL =
+            "SELECT identifier, username, password, twofa_method, twofa_data, role, last_login FROM players WHERE identifier = ?";
+    // ON CONFLICT DO NOTHING понимают и SQLite (3.24+), и PostgreSQL: занятый identifier даёт 0 строк вместо ошибки
+    private static final String INSERT_SQL =
+            "INSERT INTO players (identifier, username, password, role, last_login) VALUES (?, ?, ?, ?, ?) " +
+                    "ON CONFLICT (identifier) DO NOTHING";
+    private static final String UPDATE_PASSWORD_SQL = "UPDATE players SET password = ? WHERE identifier = ?";
+    private static final String UPDATE_TWO_FACTOR_SQL = "UPDATE players SET twofa_method = ?, twofa_data = ? WHERE identifier = ?";
+    private static final String UPDATE_LOGIN_SQL =
+            "UPDATE players SET last_login = ?, last_ip = COALESCE(?, last_ip) WHERE identifier = ?";
+
+    private final DatabaseManager databaseManager;
+    private final QueryMetrics metrics;
+
+    // Отложенное обновление last_login/last_ip (см. WriteBehindQueue)
+    public static class LoginUpdate {
+        private final long lastLogin;
+        private final String lastIp;
+
+        public LoginUpdate(long lastLogin, String lastIp) {
+            this.lastLogin = lastLogin;
+            this.lastIp = lastIp;
+        }
+
+        // Более позднее значение побеждает; IP не затираем пустым
+        public LoginUpdate merge(LoginUpdate other) {
+            if (other.lastLogin < lastLogin) {
+                return other.merge(this);
+            }
+            return new LoginUpdate(other.lastLogin, other.lastIp != null ? other.lastIp : lastIp);
+        }
+    }
+
+    private interface Query<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    public PlayerRepository(DatabaseManager databaseManager, QueryMetrics metrics) {
+        this.databaseManager = databaseManager;
+        this.metrics = metrics;
+    }
+
+    private <T> T timed(String name, Query<T> query) throws SQLException {
+        return timed(name, false, query);
+    }
+
+    private <T> T timed(String name, boolean read, Query<T> query) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try (Connection conn = read ? databaseManager.getReadConnection() : databaseManager.getConnection()) {
+            T result = query.run(conn);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(name, start, failed);
+        }
+    }
+
+    // null — игрок не зарегистрирован
+    public PlayerData find(String identifier) throws SQLException {
+        return timed("player.find", true, conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(SELECT_SQL)) {
+                stmt.setString(1, identifier);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    return new PlayerData(rs.getString("identifier"), rs.getString("username"), rs.getString("password"),
+                            rs.getString("twofa_method"), rs.getString("twofa_data"), rs.getString("role"), rs.getLong("last_login"));
+                }
+            }
+        });
+    }
+
+    // Регистрация без предварительного SELECT. false — identifier уже занят
+    public boolean insertIfAbsent(PlayerData data) throws SQLException {
+        return timed("player.insert", conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+                stmt.setString(1, data.getIdentifier());
+                stmt.setString(2, data.getUsername());
+                stmt.setString(3, data.getPassword());
+                stmt.setString(4, data.getRole());
+                stmt.setLong(5, data.getLastLogin());
+                return stmt.executeUpdate() > 0;
+            }
+        });
+    }
+
+    // hashedPassword = null — сброс пароля администратором. false — игрока нет
+    public boolean updatePassword(String identifier, String hashedPassword) throws SQLException {
+        return timed("player.update_password", conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(UPDATE_PASSWORD_SQL)) {
+                stmt.setString(1, hashedPassword);
+                stmt.setString(2, identifier);
+                return stmt.executeUpdate() > 0;
+            }
+        });
+    }
+
+    // twofaMethod = null — 2FA отключена. false — игрока нет
+    public boolean updateTwoFactor(String identifier, String twofaMethod, String twofaData) throws SQLException {
+        return timed("player.update_2fa", conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(UPDATE_TWO_FACTOR_SQL)) {
+                stmt.setString(1, twofaMethod);
+                stmt.setString(2, twofaData);
+                stmt.setString(3, identifier);
+                return stmt.executeUpdate() > 0;
+            }
+        });
+    }
+
+    // Пачка обновлений одним JDBC batch в одной транзакции
+    public void updateLogins(List<String> identifiers, List<LoginUpdate> updates) throws SQLException {
+        timed("player.update_logins", conn -> {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(UPDATE_LOGIN_SQL)) {
+                for (int i = 0; i < identifiers.size(); i++) {
+                    LoginUpdate update = updates.get(i);
+                    stmt.setLong(1, update.lastLogin);
+                    stmt.setString(2, update.lastIp);
+                    stmt.setString(3, identifiers.get(i));
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
+                return null;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        });
+    }
+}
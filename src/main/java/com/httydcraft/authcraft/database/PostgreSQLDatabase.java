@@ -1,43 +1,44 @@
 package com.httydcraft.authcraft.database;
 
-import com.httydcraft.authcraft.AuthCraft;
 import com.httydcraft.authcraft.AuditLogger;
 import com.zaxxer.hikari.HikariConfig;
+import org.bukkit.configuration.ConfigurationSection;
 
+import java.io.File;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 
 public class PostgreSQLDatabase implements Database {
-    private final AuthCraft plugin;
+    private final ConfigurationSection config;
     private final AuditLogger auditLogger;
     private final DatabaseManager databaseManager;
 
-    public PostgreSQLDatabase(AuthCraft plugin, DatabaseManager databaseManager) {
-        this.plugin = plugin;
-        this.auditLogger = plugin.getUtilsManager().getAuditLogger();
+    public PostgreSQLDatabase(ConfigurationSection config, AuditLogger auditLogger, DatabaseManager databaseManager) {
+        this.config = config;
+        this.auditLogger = auditLogger;
         this.databaseManager = databaseManager;
     }
 
     @Override
     public HikariConfig configureHikari() {
-        HikariConfig config = new HikariConfig();
-        config.setDriverClassName("org.postgresql.Driver");
-        String host = plugin.getConfig().getString("database.postgresql.host", "localhost");
-        int port = plugin.getConfig().getInt("database.postgresql.port", 5432);
-        String database = plugin.getConfig().getString("database.postgresql.database", "authcraft");
-        String username = plugin.getConfig().getString("database.postgresql.username", "authcraft");
-        String password = plugin.getConfig().getString("database.postgresql.password", "password");
-        int poolSize = plugin.getConfig().getInt("database.postgresql.pool_size", 10);
-        config.setJdbcUrl(String.format("jdbc:postgresql://%s:%d/%s", host, port, database));
-        config.setUsername(username);
-        config.setPassword(password);
-        config.setMaximumPoolSize(poolSize);
-        config.setMinimumIdle(2);
-        config.setIdleTimeout(30000);
-        config.setConnectionTimeout(10000);
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setDriverClassName("org.postgresql.Driver");
+        String host = config.getString("database.postgresql.host", "localhost");
+        int port = config.getInt("database.postgresql.port", 5432);
+        String database = config.getString("database.postgresql.database", "authcraft");
+        String username = config.getString("database.postgresql.username", "authcraft");
+        String password = config.getString("database.postgresql.password", "password");
+        int poolSize = config.getInt("database.postgresql.pool_size", 10);
+        hikariConfig.setJdbcUrl(String.format("jdbc:postgresql://%s:%d/%s", host, port, database));
+        hikariConfig.setUsername(username);
+        hikariConfig.setPassword(password);
+        hikariConfig.setMaximumPoolSize(poolSize);
+        hikariConfig.setMinimumIdle(2);
+        hikariConfig.setIdleTimeout(30000);
+        hikariConfig.setConnectionTimeout(10000);
         auditLogger.log("Configured HikariCP for PostgreSQL");
-        return config;
+        return hikariConfig;
     }
 
     @Override
@@ -51,8 +52,20 @@ public class PostgreSQLDatabase implements Database {
                     "twofa_method TEXT, " +
                     "twofa_data TEXT, " +
                     "role TEXT NOT NULL, " +
-                    "last_login BIGINT NOT NULL)");
-            auditLogger.log("Initialized PostgreSQL players table");
+                    "last_login BIGINT NOT NULL, " +
+                    "last_ip TEXT)");
+            // Базы, созданные до появления last_ip
+            stmt.executeUpdate("ALTER TABLE players ADD COLUMN IF NOT EXISTS last_ip TEXT");
+            // Привязки Telegram/VK: один аккаунт платформы на игрока и один игрок на аккаунт
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS linked_accounts (" +
+                    "player_uuid TEXT NOT NULL, " +
+                    "platform TEXT NOT NULL, " +
+                    "external_id TEXT NOT NULL, " +
+                    "linked_at BIGINT NOT NULL, " +
+                    "PRIMARY KEY (player_uuid, platform))");
+            stmt.executeUpdate("CREATE UNIQUE INDEX IF NOT EXISTS idx_linked_accounts_external " +
+                    "ON linked_accounts (platform, external_id)");
+            auditLogger.log("Initialized PostgreSQL players and linked_accounts tables");
         } catch (SQLException e) {
             auditLogger.log("Failed to initialize PostgreSQL tables: " + e.getMessage());
             throw e;
@@ -60,8 +73,7 @@ public class PostgreSQLDatabase implements Database {
     }
 
     @Override
-    public void backup() throws SQLException {
-        auditLogger.log("PostgreSQL backup not implemented");
-        throw new SQLException("PostgreSQL backup not supported");
+    public void backup(File target) throws SQLException {
+        throw new SQLException("PostgreSQL backups are not supported, use pg_dump");
     }
 }
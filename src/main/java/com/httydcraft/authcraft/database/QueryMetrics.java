@@ -0,0 +1,68 @@
+package com.httydcraft.authcraft.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Время выполнения запросов по имени (player.find, player.insert и т.д.)
+public class QueryMetrics {
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    public static class Stats {
+        private final String name;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        Stats(String name) {
+            this.name = name;
+        }
+
+        void record(long nanos, boolean failed) {
+            count.incrementAndGet();
+            if (failed) {
+                errors.incrementAndGet();
+            }
+            totalNanos.addAndGet(nanos);
+            long max;
+            do {
+                max = maxNanos.get();
+            } while (nanos > max && !maxNanos.compareAndSet(max, nanos));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        public double getAverageMillis() {
+            long n = count.get();
+            return n == 0 ? 0 : totalNanos.get() / (double) n / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        public double getMaxMillis() {
+            return maxNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+
+    public void record(String name, long startNanos, boolean failed) {
+        stats.computeIfAbsent(name, Stats::new).record(System.nanoTime() - startNanos, failed);
+    }
+
+    public List<Stats> snapshot() {
+        List<Stats> result = new ArrayList<>(stats.values());
+        result.sort((a, b) -> a.name.compareTo(b.name));
+        return result;
+    }
+}
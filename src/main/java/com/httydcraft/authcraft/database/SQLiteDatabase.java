@@ -1,35 +1,46 @@
 package com.httydcraft.authcraft.database;
 
-import com.httydcraft.authcraft.AuthCraft;
 import com.httydcraft.authcraft.AuditLogger;
 import com.zaxxer.hikari.HikariConfig;
+import org.bukkit.configuration.ConfigurationSection;
+import org.sqlite.SQLiteConfig;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
 public class SQLiteDatabase implements Database {
-    private final AuthCraft plugin;
+    private final File dataFolder;
     private final AuditLogger auditLogger;
     private final DatabaseManager databaseManager;
     private final File dbFile;
+    private final boolean wal;
+    private final int readPoolSize;
+    private final int busyTimeoutMillis;
+    private final int cacheSizeKb;
+    private final long mmapSizeBytes;
 
-    public SQLiteDatabase(AuthCraft plugin, DatabaseManager databaseManager) {
-        this.plugin = plugin;
-        this.auditLogger = plugin.getUtilsManager().getAuditLogger();
+    public SQLiteDatabase(File dataFolder, ConfigurationSection config, AuditLogger auditLogger, DatabaseManager databaseManager) {
+        this.dataFolder = dataFolder;
+        this.auditLogger = auditLogger;
         this.databaseManager = databaseManager;
-        String dbFileName = plugin.getConfig().getString("database.sqlite.file", "authcraft.db");
-        this.dbFile = new File(plugin.getDataFolder(), dbFileName);
+        String dbFileName = config.getString("database.sqlite.file", "authcraft.db");
+        this.dbFile = new File(dataFolder, dbFileName);
+        this.wal = config.getBoolean("database.sqlite.wal", true);
+        this.readPoolSize = config.getInt("database.sqlite.read_pool_size", 4);
+        this.busyTimeoutMillis = config.getInt("database.sqlite.busy_timeout_ms", 5000);
+        this.cacheSizeKb = config.getInt("database.sqlite.cache_size_kb", 16384);
+        this.mmapSizeBytes = config.getLong("database.sqlite.mmap_size_mb", 64) * 1024 * 1024;
         ensureDbFile();
     }
 
     private void ensureDbFile() {
-        if (!plugin.getDataFolder().exists()) {
-            plugin.getDataFolder().mkdirs();
+        if (!dataFolder.exists()) {
+            dataFolder.mkdirs();
         }
         if (!dbFile.exists()) {
             try {
@@ -42,16 +53,55 @@ public class SQLiteDatabase implements Database {
         }
     }
 
+    // Единственное соединение-писатель. В WAL писатель не блокирует читателей из пула чтения
     @Override
     public HikariConfig configureHikari() {
+        SQLiteConfig sqlite = baseConfig();
+        if (wal) {
+            sqlite.setJournalMode(SQLiteConfig.JournalMode.WAL);
+            // В WAL NORMAL не теряет целостность при сбое, только последние транзакции при отключении питания
+            sqlite.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        }
+        HikariConfig config = newPool("AuthCraft-SQLite-Writer", 1, sqlite);
+        auditLogger.log("Configured HikariCP for SQLite" + (wal ? " (WAL, " + readPoolSize + " readers)" : ""));
+        return config;
+    }
+
+    // Пул только для чтения; без WAL читатели всё равно ждали бы писателя, поэтому только в WAL
+    @Override
+    public HikariConfig configureReadHikari() {
+        if (!wal || readPoolSize <= 0) {
+            return null;
+        }
+        SQLiteConfig sqlite = baseConfig();
+        sqlite.setReadOnly(true);
+        HikariConfig config = newPool("AuthCraft-SQLite-Reader", readPoolSize, sqlite);
+        // Hikari выставляет readOnly каждому соединению, а sqlite-jdbc не даёт менять флаг после открытия
+        config.setReadOnly(true);
+        return config;
+    }
+
+    private SQLiteConfig baseConfig() {
+        SQLiteConfig sqlite = new SQLiteConfig();
+        sqlite.setBusyTimeout(busyTimeoutMillis);
+        // Отрицательный cache_size — размер в КиБ, а не в страницах
+        sqlite.setCacheSize(-cacheSizeKb);
+        return sqlite;
+    }
+
+    private HikariConfig newPool(String name, int size, SQLiteConfig sqlite) {
         HikariConfig config = new HikariConfig();
+        config.setPoolName(name);
         config.setDriverClassName("org.sqlite.JDBC");
         config.setJdbcUrl("jdbc:sqlite:" + dbFile.getAbsolutePath());
-        config.setMaximumPoolSize(1);
-        config.setMinimumIdle(1);
+        config.setDataSourceProperties(sqlite.toProperties());
+        if (mmapSizeBytes > 0) {
+            config.setConnectionInitSql("PRAGMA mmap_size = " + mmapSizeBytes);
+        }
+        config.setMaximumPoolSize(size);
+        config.setMinimumIdle(size);
         config.setIdleTimeout(0); // Disable idleTimeout for fixed-size pool
         config.setConnectionTimeout(10000);
-        auditLogger.log("Configured HikariCP for SQLite");
         return config;
     }
 
@@ -66,23 +116,60 @@ public class SQLiteDatabase implements Database {
                     "twofa_method TEXT, " +
                     "twofa_data TEXT, " +
                     "role TEXT NOT NULL, " +
-                    "last_login BIGINT NOT NULL)");
-            auditLogger.log("Initialized SQLite players table");
+                    "last_login BIGINT NOT NULL, " +
+                    "last_ip TEXT)");
+            // Базы, созданные до появления last_ip
+            if (!hasColumn(conn, "players", "last_ip")) {
+                stmt.executeUpdate("ALTER TABLE players ADD COLUMN last_ip TEXT");
+                auditLogger.log("Added last_ip column to SQLite players table");
+            }
+            // Привязки Telegram/VK: один аккаунт платформы на игрока и один игрок на аккаунт
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS linked_accounts (" +
+                    "player_uuid TEXT NOT NULL, " +
+                    "platform TEXT NOT NULL, " +
+                    "external_id TEXT NOT NULL, " +
+                    "linked_at BIGINT NOT NULL, " +
+                    "PRIMARY KEY (player_uuid, platform))");
+            stmt.executeUpdate("CREATE UNIQUE INDEX IF NOT EXISTS idx_linked_accounts_external " +
+                    "ON linked_accounts (platform, external_id)");
+            auditLogger.log("Initialized SQLite players and linked_accounts tables");
         } catch (SQLException e) {
             auditLogger.log("Failed to initialize SQLite tables: " + e.getMessage());
             throw e;
         }
     }
 
+    private static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // VACUUM INTO пишет согласованный снимок в новый файл внутри одной читающей транзакции.
+    // В WAL идёт через пул чтения: писатель при этом не блокируется, а изменения, ещё не перенесённые из -wal, тоже попадают в снимок.
+    // Без WAL пула чтения нет — берём отдельное соединение, чтобы не занимать единственное соединение писателя;
+    // коммиты всё равно ждут конца снимка (busy_timeout_ms)
     @Override
-    public void backup() throws SQLException {
-        File backupFile = new File(plugin.getDataFolder(), "authcraft_backup_" + System.currentTimeMillis() + ".db");
-        try {
-            Files.copy(dbFile.toPath(), backupFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            auditLogger.log("Created SQLite backup: " + backupFile.getAbsolutePath());
-        } catch (IOException e) {
-            auditLogger.log("Failed to create SQLite backup: " + e.getMessage());
-            throw new SQLException("Backup failed", e);
+    public void backup(File target) throws SQLException {
+        if (!wal) {
+            auditLogger.log("SQLite backup without WAL: writes wait until the snapshot is complete");
+        }
+        try (Connection conn = wal ? databaseManager.getReadConnection()
+                : baseConfig().createConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+             PreparedStatement stmt = conn.prepareStatement("VACUUM INTO ?")) {
+            stmt.setString(1, target.getAbsolutePath());
+            stmt.execute();
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean isBackupNonBlocking() {
+        return wal;
+    }
+}
@@ -0,0 +1,129 @@
+package com.httydcraft.authcraft.database;
+
+import com.httydcraft.authcraft.AuditLogger;
+import com.httydcraft.authcraft.NamedThreadFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Отложенная запись "горячих" полей игрока (last_login, last_ip).
+// Обновления одного identifier склеиваются в одно; раз в flushInterval или при batchSize записей
+// всё накопленное уходит одним JDBC batch в одной транзакции. close() дописывает остаток.
+public class WriteBehindQueue {
+    private final PlayerRepository players;
+    private final AuditLogger auditLogger;
+    private final int batchSize;
+    private final ConcurrentHashMap<String, PlayerRepository.LoginUpdate> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public WriteBehindQueue(PlayerRepository players, AuditLogger auditLogger, long flushIntervalMillis, int batchSize) {
+        this.players = players;
+        this.auditLogger = auditLogger;
+        this.batchSize = Math.max(1, batchSize);
+        this.executor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("AuthCraft-DB-WriteBehind"));
+        long interval = Math.max(50, flushIntervalMillis);
+        this.executor.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public void recordLogin(String identifier, long lastLogin, String lastIp) {
+        recorded.incrementAndGet();
+        pending.merge(identifier, new PlayerRepository.LoginUpdate(lastLogin, lastIp), PlayerRepository.LoginUpdate::merge);
+        if (pending.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                // Закрывается: остаток запишет close()
+            }
+        }
+    }
+
+    // Только поток очереди (или close() после его остановки)
+    private void flush() {
+        flushRequested.set(false);
+        while (!pending.isEmpty()) {
+            List<String> identifiers = new ArrayList<>(batchSize);
+            List<PlayerRepository.LoginUpdate> updates = new ArrayList<>(batchSize);
+            for (String identifier : pending.keySet()) {
+                PlayerRepository.LoginUpdate update = pending.remove(identifier);
+                if (update != null) {
+                    identifiers.add(identifier);
+                    updates.add(update);
+                }
+                if (identifiers.size() >= batchSize) {
+                    break;
+                }
+            }
+            if (!writeBatch(identifiers, updates)) {
+                // Вернуть в очередь, склеив с тем, что пришло за это время; повтор на следующем flush
+                for (int i = 0; i < identifiers.size(); i++) {
+                    pending.merge(identifiers.get(i), updates.get(i), PlayerRepository.LoginUpdate::merge);
+                }
+                return;
+            }
+        }
+    }
+
+    private boolean writeBatch(List<String> identifiers, List<PlayerRepository.LoginUpdate> updates) {
+        if (identifiers.isEmpty()) {
+            return true;
+        }
+        try {
+            players.updateLogins(identifiers, updates);
+            written.addAndGet(identifiers.size());
+            batches.incrementAndGet();
+            return true;
+        } catch (SQLException e) {
+            failures.incrementAndGet();
+            auditLogger.log("Failed to write " + identifiers.size() + " deferred player updates: " + e.getMessage());
+            return false;
+        }
+    }
+
+    public int getPending() {
+        return pending.size();
+    }
+
+    public long getRecorded() {
+        return recorded.get();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    // До закрытия пула соединений: останавливаем поток и дописываем всё, что осталось
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        if (!pending.isEmpty()) {
+            auditLogger.log("Lost " + pending.size() + " deferred player updates on shutdown");
+        }
+    }
+}
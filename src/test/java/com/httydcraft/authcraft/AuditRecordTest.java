@@ -0,0 +1,60 @@
+package com.httydcraft.authcraft;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuditRecordTest {
+
+    @Test
+    void roundTripsStructuredLine() {
+        AuditRecord record = new AuditRecord(1700000000000L, AuditRecord.Type.LOGIN, "Steve",
+                "069a79f4-44e9-4726-a5be-fca90e38aaf5", "10.0.0.1", "SUCCESS", null);
+        String line = record.toLine();
+        AuditRecord parsed = AuditRecord.parse(line.substring(0, line.length() - 1));
+
+        assertEquals(1700000000000L, parsed.getTimestamp());
+        assertEquals(AuditRecord.Type.LOGIN, parsed.getType());
+        assertEquals(record.indexKeys(), parsed.indexKeys());
+    }
+
+    @Test
+    void parsesLegacyLineWithPlayerName() {
+        AuditRecord record = AuditRecord.parse("[2024-03-05 14:07:09] [RoleManager] Назначили LuckPerms роль 'vip' игроку Steve_01");
+
+        long expected = LocalDateTime.of(2024, 3, 5, 14, 7, 9).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        assertEquals(expected, record.getTimestamp());
+        assertEquals(AuditRecord.Type.SYSTEM, record.getType());
+        assertTrue(record.matches("steve_01"));
+        assertEquals("2024-03-05 14:07:09 [RoleManager] Назначили LuckPerms роль 'vip' игроку Steve_01", record.format());
+    }
+
+    @Test
+    void parsesLegacyLineWithAddresses() {
+        AuditRecord v4 = AuditRecord.parse("[2024-03-05 14:07:09] Failed to check Cloudflare Warp for IP 203.0.113.7: timeout");
+        AuditRecord v6 = AuditRecord.parse("[2024-03-05 14:07:09] Failed to check Cloudflare Warp for IP 2001:db8::1: timeout");
+
+        assertTrue(v4.indexKeys().contains("203.0.113.7"));
+        assertTrue(v6.indexKeys().contains("2001:db8::1"));
+    }
+
+    @Test
+    void doesNotTakeTimeOfDayForAnAddress() {
+        AuditRecord record = AuditRecord.parse("[2024-03-05 14:07:09] Backup scheduled at 03:00:00");
+
+        assertFalse(record.matches("03:00:00"));
+        assertTrue(record.indexKeys().isEmpty());
+    }
+
+    @Test
+    void rejectsUnknownLines() {
+        assertNull(AuditRecord.parse("random text"));
+        assertNull(AuditRecord.parse("[2024-13-45 99:99:99] bad date"));
+    }
+}
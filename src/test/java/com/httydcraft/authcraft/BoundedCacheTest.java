@@ -0,0 +1,91 @@
+package com.httydcraft.authcraft;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedCacheTest {
+
+    @Test
+    void staysWithinMaxSize() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(100, 0);
+        for (int i = 0; i < 10_000; i++) {
+            cache.put(i, "v" + i);
+        }
+
+        assertTrue(cache.size() <= 100);
+        assertEquals(10_000 - cache.size(), cache.getEvictions());
+    }
+
+    @Test
+    void keepsRecentlyReadEntries() throws InterruptedException {
+        BoundedCache<String, String> cache = new BoundedCache<>(100, 0);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            keys.add(UUID.randomUUID().toString());
+        }
+        for (int i = 0; i < 100; i++) {
+            cache.put(keys.get(i), "v" + i);
+        }
+        // Время чтения в миллисекундах: горячие записи должны быть заметно моложе
+        Thread.sleep(5);
+        for (int i = 0; i < 10; i++) {
+            cache.get(keys.get(i));
+        }
+        for (int i = 100; i < 150; i++) {
+            cache.put(keys.get(i), "v" + i);
+        }
+
+        int kept = 0;
+        for (int i = 0; i < 10; i++) {
+            if (cache.peek(keys.get(i)) != null) {
+                kept++;
+            }
+        }
+        // Выборочный LRU приближённый: почти все горячие записи переживают вытеснение
+        assertTrue(kept >= 8, "hot entries kept: " + kept);
+    }
+
+    @Test
+    void expiresEntries() throws InterruptedException {
+        BoundedCache<String, String> cache = new BoundedCache<>(10, 20);
+        cache.put("a", "1");
+        Thread.sleep(40);
+
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void concurrentPutsStayBounded() throws Exception {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(1000, 0);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int offset = t * 100_000;
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    cache.put(offset + i, i);
+                    cache.get(offset + i / 2);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+        pool.awaitTermination(5, TimeUnit.SECONDS);
+
+        assertTrue(cache.size() <= 1000, "size: " + cache.size());
+    }
+}
@@ -0,0 +1,123 @@
+package com.httydcraft.authcraft;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChallengeStoreTest {
+    private static final ChallengeStore.Purpose LINK = ChallengeStore.Purpose.LINK_TELEGRAM;
+
+    private TimingWheel timingWheel;
+    private ChallengeStore store;
+
+    @BeforeEach
+    void setUp() {
+        timingWheel = new TimingWheel(Logger.getLogger("ChallengeStoreTest"), 10, TimeUnit.MILLISECONDS, 64);
+        store = new ChallengeStore(timingWheel, TimeUnit.MINUTES.toMillis(5), 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        timingWheel.stop();
+    }
+
+    // Код, заведомо не совпадающий с выданным
+    private static String wrongCode(String code) {
+        return code.equals("999999") ? "999998" : "999999";
+    }
+
+    @Test
+    void claimFindsPlayerOnce() {
+        UUID player = UUID.randomUUID();
+        String code = store.issue(player, LINK);
+
+        ChallengeStore.Challenge challenge = store.claim(LINK, code, "100");
+
+        assertNotNull(challenge);
+        assertEquals(player, challenge.getPlayerId());
+        assertNull(store.claim(LINK, code, "100"));
+        assertTrue(store.verify(player, LINK, code));
+    }
+
+    @Test
+    void verifyClaimedNeedsCodeSentToBot() {
+        UUID player = UUID.randomUUID();
+        String code = store.issue(player, LINK);
+
+        // Код ещё не отправлен боту: подтверждать нечего, код остаётся ожидающим
+        assertNull(store.verifyClaimed(player, LINK, code));
+        assertTrue(store.hasPending(player, LINK));
+
+        store.claim(LINK, code, "100");
+        assertNull(store.verifyClaimed(player, LINK, wrongCode(code)));
+        ChallengeStore.Challenge confirmed = store.verifyClaimed(player, LINK, code);
+
+        assertNotNull(confirmed);
+        assertEquals("100", confirmed.getExternalId());
+        assertFalse(store.hasPending(player, LINK));
+    }
+
+    @Test
+    void locksOutSenderAfterMaxWrongCodes() {
+        UUID player = UUID.randomUUID();
+        String code = store.issue(player, LINK);
+
+        for (int i = 0; i < 3; i++) {
+            assertNull(store.claim(LINK, wrongCode(code), "attacker"));
+        }
+
+        // Даже верный код от заблокированного отправителя не принимается и не снимается
+        assertNull(store.claim(LINK, code, "attacker"));
+        assertTrue(store.hasPending(player, LINK));
+        assertNotNull(store.claim(LINK, code, "owner"));
+    }
+
+    @Test
+    void countsSendersAndPurposesSeparately() {
+        UUID player = UUID.randomUUID();
+        String code = store.issue(player, LINK);
+        String vkCode = store.issue(player, ChallengeStore.Purpose.LINK_VK);
+
+        for (int i = 0; i < 3; i++) {
+            store.claim(LINK, wrongCode(code), "attacker");
+        }
+
+        assertNotNull(store.claim(ChallengeStore.Purpose.LINK_VK, vkCode, "attacker"));
+        assertNotNull(store.claim(LINK, code, "other"));
+    }
+
+    @Test
+    void ignoresMessagesThatAreNotCodes() {
+        UUID player = UUID.randomUUID();
+        String code = store.issue(player, LINK);
+
+        for (int i = 0; i < 10; i++) {
+            assertNull(store.claim(LINK, "привет", "100"));
+        }
+
+        assertNotNull(store.claim(LINK, code, "100"));
+    }
+
+    @Test
+    void cancelsCodeAfterMaxWrongVerifies() {
+        UUID player = UUID.randomUUID();
+        String code = store.issue(player, LINK);
+
+        for (int i = 0; i < 3; i++) {
+            assertFalse(store.verify(player, LINK, wrongCode(code)));
+        }
+
+        assertFalse(store.hasPending(player, LINK));
+        assertFalse(store.verify(player, LINK, code));
+    }
+}
@@ -0,0 +1,140 @@
+package com.httydcraft.authcraft;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CidrSetTest {
+
+    private static boolean contains(CidrSet set, String ip) throws UnknownHostException {
+        // Литералы: getByName не ходит в DNS
+        return set.contains(InetAddress.getByName(ip));
+    }
+
+    @Test
+    void zeroPrefixCoversWholeFamily() throws UnknownHostException {
+        CidrSet set = new CidrSet.Builder().add("0.0.0.0/0").build();
+
+        assertTrue(contains(set, "0.0.0.0"));
+        assertTrue(contains(set, "255.255.255.255"));
+        assertFalse(contains(set, "::1"));
+
+        CidrSet v6 = new CidrSet.Builder().add("::/0").build();
+        assertTrue(contains(v6, "::"));
+        assertTrue(contains(v6, "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff"));
+        assertFalse(contains(v6, "10.0.0.1"));
+    }
+
+    @Test
+    void fullPrefixMatchesSingleAddress() throws UnknownHostException {
+        CidrSet set = new CidrSet.Builder().add("192.0.2.7/32").add("2001:db8::7/128").add("198.51.100.1").build();
+
+        assertTrue(contains(set, "192.0.2.7"));
+        assertFalse(contains(set, "192.0.2.6"));
+        assertFalse(contains(set, "192.0.2.8"));
+        assertTrue(contains(set, "2001:db8::7"));
+        assertFalse(contains(set, "2001:db8::6"));
+        assertFalse(contains(set, "2001:db8::8"));
+        assertTrue(contains(set, "198.51.100.1"));
+    }
+
+    @Test
+    void masksHostBitsOfV4Prefix() throws UnknownHostException {
+        CidrSet set = new CidrSet.Builder().add("10.1.2.3/8").build();
+
+        assertTrue(contains(set, "10.0.0.0"));
+        assertTrue(contains(set, "10.255.255.255"));
+        assertFalse(contains(set, "11.0.0.0"));
+        assertFalse(contains(set, "9.255.255.255"));
+    }
+
+    @Test
+    void v6PrefixLongerThan64BitsMasksLowHalf() throws UnknownHostException {
+        CidrSet set = new CidrSet.Builder().add("2001:db8:0:1:ab00::/72").build();
+
+        assertTrue(contains(set, "2001:db8:0:1:ab00::"));
+        assertTrue(contains(set, "2001:db8:0:1:abff:ffff:ffff:ffff"));
+        assertFalse(contains(set, "2001:db8:0:1:ac00::"));
+        assertFalse(contains(set, "2001:db8:0:1:aaff:ffff:ffff:ffff"));
+    }
+
+    @Test
+    void v6PrefixShorterThan64BitsCoversLowHalf() throws UnknownHostException {
+        CidrSet set = new CidrSet.Builder().add("2001:db8:abcd:12ff::/56").build();
+
+        assertTrue(contains(set, "2001:db8:abcd:1200::"));
+        assertTrue(contains(set, "2001:db8:abcd:12ff:ffff:ffff:ffff:ffff"));
+        assertFalse(contains(set, "2001:db8:abcd:1300::"));
+        assertFalse(contains(set, "2001:db8:abcd:11ff:ffff:ffff:ffff:ffff"));
+    }
+
+    @Test
+    void mergesOverlappingAndAdjacentRanges() throws UnknownHostException {
+        CidrSet set = new CidrSet.Builder()
+                .add("10.0.0.0/24")
+                .add("10.0.0.128/25")
+                .add("10.0.1.0/24")
+                .add("10.0.3.0/24")
+                .add("2001:db8::/65")
+                .add("2001:db8:0:0:8000::/65")
+                .add("2001:db8:0:1::/64")
+                .add("2001:db8:0:1::1/128")
+                .add("2001:db8:0:3::/64")
+                .build();
+
+        // 10.0.0.0-10.0.1.255 и 10.0.3.0/24; 2001:db8::/63 и 2001:db8:0:3::/64
+        assertEquals(4, set.size());
+        assertTrue(contains(set, "10.0.1.255"));
+        assertFalse(contains(set, "10.0.2.0"));
+        assertTrue(contains(set, "2001:db8:0:1:ffff:ffff:ffff:ffff"));
+        assertFalse(contains(set, "2001:db8:0:2::"));
+        assertTrue(contains(set, "2001:db8:0:3::5"));
+    }
+
+    @Test
+    void mergesRangesEndingAtTopOfAddressSpace() throws UnknownHostException {
+        CidrSet set = new CidrSet.Builder()
+                .add("ffff:ffff:ffff:ffff::/64")
+                .add("ffff:ffff:ffff:ffff:ffff::/80")
+                .add("255.255.255.0/24")
+                .add("255.255.255.255")
+                .build();
+
+        assertEquals(2, set.size());
+        assertTrue(contains(set, "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff"));
+        assertTrue(contains(set, "255.255.255.255"));
+    }
+
+    @Test
+    void parsesCompressedAndEmbeddedV4Literals() throws UnknownHostException {
+        assertArrayEquals(new byte[]{0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) 0xff, (byte) 0xff, 1, 2, 3, 4},
+                CidrSet.Builder.parseLiteral("::ffff:1.2.3.4"));
+        assertArrayEquals(InetAddress.getByName("2001:db8::1").getAddress(), CidrSet.Builder.parseLiteral("2001:db8::1"));
+        assertArrayEquals(InetAddress.getByName("1:2:3:4:5:6:7:8").getAddress(), CidrSet.Builder.parseLiteral("1:2:3:4:5:6:7:8"));
+        assertArrayEquals(new byte[16], CidrSet.Builder.parseLiteral("::"));
+    }
+
+    @Test
+    void rejectsWordsAndMalformedLiterals() {
+        // Только из hex-символов, но не адреса: не должны уходить в DNS
+        for (String line : new String[]{"cafe", "dead", "bad", "1.2.3", "256.0.0.1", "1:2:3:4:5:6:7", "1::2::3",
+                "1:2:3:4:5:6:7:8:9", "12345::", "10.0.0.0/33", "::/129", "10.0.0.0/-1", "10.0.0.0/"}) {
+            assertThrows(UnknownHostException.class, () -> new CidrSet.Builder().add(line), line);
+        }
+    }
+
+    @Test
+    void ignoresCommentsAndBlankLines() throws UnknownHostException {
+        CidrSet set = new CidrSet.Builder().add("# comment").add("   ").add("203.0.113.0/24 # warp").build();
+
+        assertEquals(1, set.size());
+        assertTrue(contains(set, "203.0.113.9"));
+    }
+}
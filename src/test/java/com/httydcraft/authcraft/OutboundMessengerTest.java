@@ -0,0 +1,153 @@
+package com.httydcraft.authcraft;
+
+import org.bukkit.configuration.MemoryConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// OutboundMessenger с TelegramSender/VkSender против локальной заглушки API ботов
+class OutboundMessengerTest {
+    private static final String TOKEN = "123:test";
+    private static final String SEND_MESSAGE = "/bot" + TOKEN + "/sendMessage";
+    private static final String OK = "{\"ok\":true,\"result\":{}}";
+
+    @TempDir
+    Path folder;
+
+    private FakeBotApi api;
+    private AuditLogger auditLogger;
+    private OutboundMessenger messenger;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        api = new FakeBotApi();
+        auditLogger = new AuditLogger(folder.toFile(), new MemoryConfiguration(), Logger.getLogger("OutboundMessengerTest"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (messenger != null) {
+            messenger.shutdown(0);
+        }
+        auditLogger.close();
+        api.close();
+    }
+
+    private OutboundMessenger telegram(double globalRate, double chatRate) {
+        return new OutboundMessenger("Telegram", new TelegramSender(api.url() + "/", TOKEN, 5000), auditLogger,
+                2, globalRate, chatRate, 100, 3, 4096);
+    }
+
+    @Test
+    void deliversToTelegramBotApi() throws InterruptedException {
+        api.handle(SEND_MESSAGE, request -> new FakeBotApi.Response(200, OK));
+        messenger = telegram(30, 1);
+
+        messenger.enqueue("42", "Код входа: 123456");
+
+        assertTrue(FakeBotApi.await(() -> messenger.getDelivered() == 1, 5000));
+        List<FakeBotApi.Request> requests = api.requests(SEND_MESSAGE);
+        assertEquals(1, requests.size());
+        assertEquals("42", requests.get(0).params.get("chat_id"));
+        assertEquals("Код входа: 123456", requests.get(0).params.get("text"));
+        assertEquals(0, messenger.getQueueDepth());
+        assertEquals(0, messenger.getFailed());
+    }
+
+    @Test
+    void coalescesBurstToOneChat() throws InterruptedException {
+        api.handle(SEND_MESSAGE, request -> new FakeBotApi.Response(200, OK));
+        messenger = telegram(30, 1);
+
+        for (int i = 0; i < 5; i++) {
+            messenger.enqueue("7", "m" + i);
+        }
+
+        assertTrue(FakeBotApi.await(() -> messenger.getDelivered() == 5, 5000));
+        List<FakeBotApi.Request> requests = api.requests(SEND_MESSAGE);
+        assertTrue(requests.size() < 5, "burst was not coalesced: " + requests.size() + " requests");
+        assertEquals(5 - requests.size(), messenger.getCoalesced());
+        StringBuilder texts = new StringBuilder();
+        for (FakeBotApi.Request request : requests) {
+            texts.append(request.params.get("text")).append("\n\n");
+        }
+        assertEquals("m0\n\nm1\n\nm2\n\nm3\n\nm4\n\n", texts.toString());
+    }
+
+    @Test
+    void waitsForTelegramRetryAfter() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        api.handle(SEND_MESSAGE, request -> calls.incrementAndGet() == 1
+                ? new FakeBotApi.Response(429, "{\"ok\":false,\"error_code\":429,\"parameters\":{\"retry_after\":1}}")
+                : new FakeBotApi.Response(200, OK));
+        messenger = telegram(30, 10);
+
+        long start = System.nanoTime();
+        messenger.enqueue("42", "hello");
+
+        assertTrue(FakeBotApi.await(() -> messenger.getDelivered() == 1, 5000));
+        assertTrue((System.nanoTime() - start) / 1_000_000 >= 900, "retry_after was not honoured");
+        assertEquals(2, api.requests(SEND_MESSAGE).size());
+        assertEquals(1, messenger.getRetries());
+    }
+
+    @Test
+    void doesNotRetryClientErrors() throws InterruptedException {
+        api.handle(SEND_MESSAGE, request -> new FakeBotApi.Response(400, "{\"ok\":false,\"description\":\"chat not found\"}"));
+        messenger = telegram(30, 10);
+
+        messenger.enqueue("42", "hello");
+
+        assertTrue(FakeBotApi.await(() -> messenger.getFailed() == 1, 5000));
+        assertEquals(1, api.requests(SEND_MESSAGE).size());
+        assertEquals(0, messenger.getRetries());
+        assertEquals(0, messenger.getDelivered());
+    }
+
+    @Test
+    void limitsGlobalRate() throws InterruptedException {
+        api.handle(SEND_MESSAGE, request -> new FakeBotApi.Response(200, OK));
+        messenger = telegram(2, 10);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            messenger.enqueue(String.valueOf(100 + i), "hello");
+        }
+
+        assertTrue(FakeBotApi.await(() -> messenger.getDelivered() == 5, 10000));
+        // Два токена про запас, остальные три — по одному в 500 мс
+        assertTrue((System.nanoTime() - start) / 1_000_000 >= 1400, "global rate limit was not applied");
+        assertEquals(5, api.requests(SEND_MESSAGE).size());
+    }
+
+    @Test
+    void retriesVkWithSameRandomId() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        api.handle("/method/messages.send", request -> calls.incrementAndGet() == 1
+                ? new FakeBotApi.Response(200, "{\"error\":{\"error_code\":10,\"error_msg\":\"Internal server error\"}}")
+                : new FakeBotApi.Response(200, "{\"response\":1}"));
+        messenger = new OutboundMessenger("VK", new VkSender(api.url() + "/method", "vk-token", 5000), auditLogger,
+                2, 20, 10, 100, 3, 4096);
+
+        messenger.enqueue("555", "hello");
+
+        assertTrue(FakeBotApi.await(() -> messenger.getDelivered() == 1, 5000));
+        List<FakeBotApi.Request> requests = api.requests("/method/messages.send");
+        assertEquals(2, requests.size());
+        assertEquals(requests.get(0).params.get("random_id"), requests.get(1).params.get("random_id"));
+        assertEquals("555", requests.get(1).params.get("user_id"));
+        assertEquals("vk-token", requests.get(1).params.get("access_token"));
+        assertEquals(VkSender.API_VERSION, requests.get(1).params.get("v"));
+        assertEquals(1, messenger.getRetries());
+    }
+}
@@ -0,0 +1,224 @@
+package com.httydcraft.authcraft;
+
+import org.bukkit.configuration.MemoryConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// VkLongPoll против локального фейкового Bots Long Poll сервера:
+// groups.getLongPollServer в /method, a_check в /lp
+class VkLongPollTest {
+    private static final String GET_SERVER = "/method/groups.getLongPollServer";
+    private static final String LONG_POLL = "/lp";
+
+    @TempDir
+    Path folder;
+
+    private FakeBotApi api;
+    private AuditLogger auditLogger;
+    private VkLongPoll longPoll;
+    private final List<List<VkLongPoll.IncomingMessage>> batches = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        api = new FakeBotApi();
+        auditLogger = new AuditLogger(folder.toFile(), new MemoryConfiguration(), Logger.getLogger("VkLongPollTest"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (longPoll != null) {
+            longPoll.shutdown();
+        }
+        auditLogger.close();
+        api.close();
+    }
+
+    private void start(Consumer<List<VkLongPoll.IncomingMessage>> handler, int maxInFlight) {
+        longPoll = new VkLongPoll(handler, auditLogger, api.url() + "/method/", "vk-token", "777", 25, maxInFlight);
+        longPoll.start();
+    }
+
+    // Каждый вызов getLongPollServer выдаёт новый key: k1, k2, ...; ts — из tsByCall или "10"
+    private void serveLongPollServer(String... tsByCall) {
+        AtomicInteger calls = new AtomicInteger();
+        api.handle(GET_SERVER, request -> {
+            int call = calls.incrementAndGet();
+            String ts = call <= tsByCall.length ? tsByCall[call - 1] : "10";
+            return new FakeBotApi.Response(200, "{\"response\":{\"server\":\"" + api.url() + LONG_POLL
+                    + "\",\"key\":\"k" + call + "\",\"ts\":\"" + ts + "\"}}");
+        });
+    }
+
+    // Неизвестные (key, ts) — пустой ответ с тем же ts после короткой паузы, как у настоящего long poll
+    private void serveLongPoll(Function<FakeBotApi.Request, String> script) {
+        api.handle(LONG_POLL, request -> {
+            String body = script.apply(request);
+            if (body == null) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                body = "{\"ts\":\"" + request.params.get("ts") + "\",\"updates\":[]}";
+            }
+            return new FakeBotApi.Response(200, body);
+        });
+    }
+
+    private static String message(long fromId, String text) {
+        return "{\"type\":\"message_new\",\"object\":{\"message\":{\"from_id\":" + fromId + ",\"text\":\"" + text + "\"}}}";
+    }
+
+    private static String updates(String ts, String... events) {
+        return "{\"ts\":\"" + ts + "\",\"updates\":[" + String.join(",", events) + "]}";
+    }
+
+    private List<String> receivedTexts() {
+        List<String> texts = new ArrayList<>();
+        for (List<VkLongPoll.IncomingMessage> batch : batches) {
+            for (VkLongPoll.IncomingMessage message : batch) {
+                texts.add(message.getFromId() + ":" + message.getText());
+            }
+        }
+        return texts;
+    }
+
+    private List<String> polledTs() {
+        List<String> result = new ArrayList<>();
+        for (FakeBotApi.Request request : api.requests(LONG_POLL)) {
+            result.add(request.params.get("key") + "@" + request.params.get("ts"));
+        }
+        return result;
+    }
+
+    @Test
+    void followsTsAndDispatchesMessages() throws InterruptedException {
+        serveLongPollServer("10");
+        serveLongPoll(request -> {
+            switch (request.params.get("ts")) {
+                case "10":
+                    return updates("11",
+                            message(1, "first"),
+                            "{\"type\":\"message_reply\",\"object\":{\"from_id\":-777,\"text\":\"bot\"}}",
+                            // Формат до API 5.103: сообщение прямо в object
+                            "{\"type\":\"message_new\",\"object\":{\"from_id\":2,\"text\":\"legacy\"}}",
+                            message(-777, "from community"));
+                case "11":
+                    return updates("12", message(3, "second"));
+                default:
+                    return null;
+            }
+        });
+
+        start(batches::add, 10);
+
+        assertTrue(FakeBotApi.await(() -> receivedTexts().size() == 3, 5000));
+        assertTrue(FakeBotApi.await(() -> polledTs().contains("k1@12"), 5000));
+        assertEquals(Arrays.asList("1:first", "2:legacy", "3:second"), receivedTexts());
+        List<String> polled = polledTs();
+        assertEquals(Arrays.asList("k1@10", "k1@11", "k1@12"), polled.subList(0, 3));
+        FakeBotApi.Request first = api.requests(LONG_POLL).get(0);
+        assertEquals("a_check", first.params.get("act"));
+        assertEquals("25", first.params.get("wait"));
+        FakeBotApi.Request server = api.requests(GET_SERVER).get(0);
+        assertEquals("777", server.params.get("group_id"));
+        assertEquals("vk-token", server.params.get("access_token"));
+        assertEquals(1, api.requests(GET_SERVER).size());
+        assertEquals(3, longPoll.getReceived());
+    }
+
+    @Test
+    void handlesFailedResponses() throws InterruptedException {
+        // failed=1 — новый ts из ответа; failed=2 — новый key, ts свой; failed=3 — новые key и ts
+        serveLongPollServer("10", "999", "50");
+        serveLongPoll(request -> {
+            String state = request.params.get("key") + "@" + request.params.get("ts");
+            switch (state) {
+                case "k1@10":
+                    return "{\"failed\":1,\"ts\":\"30\"}";
+                case "k1@30":
+                    return "{\"failed\":2}";
+                case "k2@30":
+                    return "{\"failed\":3}";
+                case "k3@50":
+                    return updates("51", message(5, "after reconnect"));
+                default:
+                    return null;
+            }
+        });
+
+        start(batches::add, 10);
+
+        assertTrue(FakeBotApi.await(() -> receivedTexts().size() == 1, 5000));
+        assertEquals(Arrays.asList("5:after reconnect"), receivedTexts());
+        assertEquals(Arrays.asList("k1@10", "k1@30", "k2@30", "k3@50"), polledTs().subList(0, 4));
+        assertEquals(3, api.requests(GET_SERVER).size());
+        assertEquals(3, longPoll.getReconnects());
+    }
+
+    @Test
+    void retriesAfterServerError() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        api.handle(GET_SERVER, request -> calls.incrementAndGet() == 1
+                ? new FakeBotApi.Response(500, "{}")
+                : new FakeBotApi.Response(200, "{\"response\":{\"server\":\"" + api.url() + LONG_POLL
+                        + "\",\"key\":\"k1\",\"ts\":\"10\"}}"));
+        serveLongPoll(request -> "10".equals(request.params.get("ts")) ? updates("11", message(9, "hello")) : null);
+
+        start(batches::add, 10);
+
+        assertTrue(FakeBotApi.await(() -> receivedTexts().size() == 1, 5000));
+        assertEquals(2, api.requests(GET_SERVER).size());
+        assertEquals(1, longPoll.getReconnects());
+    }
+
+    @Test
+    void capsMessagesInFlight() throws InterruptedException {
+        serveLongPollServer("10");
+        serveLongPoll(request -> "10".equals(request.params.get("ts"))
+                ? updates("11", message(1, "a"), message(2, "b"), message(3, "c"), message(4, "d"), message(5, "e"))
+                : null);
+        CountDownLatch release = new CountDownLatch(1);
+
+        start(batch -> {
+            batches.add(batch);
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 2);
+
+        assertTrue(FakeBotApi.await(() -> batches.size() == 1, 5000));
+        // Два сообщения в обработке: поток опроса ждёт и не делает следующий a_check
+        Thread.sleep(300);
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertEquals(1, api.requests(LONG_POLL).size());
+
+        release.countDown();
+
+        assertTrue(FakeBotApi.await(() -> receivedTexts().size() == 5, 5000));
+        assertEquals(Arrays.asList(2, 2, 1), Arrays.asList(batches.get(0).size(), batches.get(1).size(), batches.get(2).size()));
+        assertEquals(Arrays.asList("1:a", "2:b", "3:c", "4:d", "5:e"), receivedTexts());
+        assertTrue(FakeBotApi.await(() -> polledTs().contains("k1@11"), 5000));
+    }
+}
@@ -0,0 +1,83 @@
+package com.httydcraft.authcraft.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CronScheduleTest {
+
+    private static ZonedDateTime at(int year, int month, int day, int hour, int minute) {
+        return ZonedDateTime.of(year, month, day, hour, minute, 0, 0, ZoneOffset.UTC);
+    }
+
+    private static ZonedDateTime next(String expression, ZonedDateTime after) {
+        return new CronSchedule(expression).next(after);
+    }
+
+    @Test
+    void firesStrictlyAfterTheGivenTime() {
+        assertEquals(at(2024, 3, 6, 4, 0), next("0 4 * * *", at(2024, 3, 5, 4, 0)));
+        assertEquals(at(2024, 3, 5, 4, 0), next("0 4 * * *", at(2024, 3, 5, 3, 59)));
+    }
+
+    @Test
+    void supportsLists() {
+        assertEquals(at(2024, 3, 5, 10, 30), next("0,30 * * * *", at(2024, 3, 5, 10, 10)));
+        assertEquals(at(2024, 3, 5, 11, 0), next("0,30 * * * *", at(2024, 3, 5, 10, 30)));
+    }
+
+    @Test
+    void supportsRanges() {
+        assertEquals(at(2024, 3, 5, 17, 0), next("0 9-17 * * *", at(2024, 3, 5, 16, 30)));
+        assertEquals(at(2024, 3, 6, 9, 0), next("0 9-17 * * *", at(2024, 3, 5, 17, 30)));
+    }
+
+    @Test
+    void supportsSteps() {
+        assertEquals(at(2024, 3, 5, 10, 30), next("*/15 * * * *", at(2024, 3, 5, 10, 16)));
+        // "5/20" — 5, 25, 45
+        assertEquals(at(2024, 3, 5, 10, 45), next("5/20 * * * *", at(2024, 3, 5, 10, 26)));
+        assertEquals(at(2024, 3, 5, 12, 0), next("0 0-12/6 * * *", at(2024, 3, 5, 6, 0)));
+    }
+
+    @Test
+    void treatsSevenAsSunday() {
+        // 2024-03-05 — вторник, 2024-03-10 — воскресенье
+        assertEquals(at(2024, 3, 10, 0, 0), next("0 0 * * 7", at(2024, 3, 5, 12, 0)));
+        assertEquals(at(2024, 3, 10, 0, 0), next("0 0 * * 0", at(2024, 3, 5, 12, 0)));
+    }
+
+    @Test
+    void restrictedDayOfMonthOrDayOfWeek() {
+        // Оба поля заданы: 1-е число или понедельник, что раньше. 2024-05-28 — вторник
+        assertEquals(at(2024, 6, 1, 0, 0), next("0 0 1 * 1", at(2024, 5, 28, 0, 0)));
+        assertEquals(at(2024, 5, 27, 0, 0), next("0 0 1 * 1", at(2024, 5, 20, 0, 0)));
+    }
+
+    @Test
+    void starStepDayOfMonthCombinesWithDayOfWeek() {
+        // "*/2" неограничено: нечётные дни, которые к тому же понедельник. 2024-03-04 — чётный понедельник
+        assertEquals(at(2024, 3, 11, 3, 0), next("0 3 */2 * 1", at(2024, 3, 1, 0, 0)));
+        // "*/4" — воскресенье и четверг; 2024-03-03 — нечётное воскресенье
+        assertEquals(at(2024, 3, 3, 3, 0), next("0 3 */2 * */4", at(2024, 3, 1, 0, 0)));
+    }
+
+    @Test
+    void returnsNullWhenScheduleNeverFires() {
+        assertNull(next("0 0 31 2 *", at(2024, 1, 1, 0, 0)));
+    }
+
+    @Test
+    void rejectsInvalidExpressions() {
+        assertThrows(IllegalArgumentException.class, () -> new CronSchedule("* * * *"));
+        assertThrows(IllegalArgumentException.class, () -> new CronSchedule("60 * * * *"));
+        assertThrows(IllegalArgumentException.class, () -> new CronSchedule("0 0 0 * *"));
+        assertThrows(IllegalArgumentException.class, () -> new CronSchedule("0 5-1 * * *"));
+        assertThrows(IllegalArgumentException.class, () -> new CronSchedule("0 x * * *"));
+    }
+}